@@ -0,0 +1,10 @@
+-- Run this SQL script to create the catalog change log: which products each bump of the catalog counter changed
+
+USE zenbuy;
+
+CREATE TABLE IF NOT EXISTS catalog_changes (
+    version BIGINT NOT NULL,
+    product_ids TEXT NULL,
+    stock_only BOOLEAN NOT NULL,
+    PRIMARY KEY (version)
+);
@@ -0,0 +1,13 @@
+-- Run this SQL script to add coupon redemption: the coupon used by an order and the token pool for popular coupons
+
+USE zenbuy;
+
+ALTER TABLE orders ADD COLUMN coupon_code VARCHAR(64) NULL;
+
+CREATE TABLE IF NOT EXISTS coupon_token_pool (
+    coupon_id BIGINT NOT NULL,
+    stripe INT NOT NULL,
+    baseline INT NOT NULL,
+    remaining INT NOT NULL,
+    PRIMARY KEY (coupon_id, stripe)
+);
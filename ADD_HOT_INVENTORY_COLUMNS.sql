@@ -0,0 +1,10 @@
+-- Run this SQL script to add the columns used by the in-memory inventory engine for hot products
+
+USE zenbuy;
+
+-- Products marked hot reserve stock in memory; the write-behind flusher applies the deltas
+ALTER TABLE product ADD COLUMN hot BIT NOT NULL DEFAULT 0;
+
+-- Order items whose stock has not yet been written back to the product row
+ALTER TABLE order_items ADD COLUMN stock_applied BIT NOT NULL DEFAULT 1;
+CREATE INDEX idx_order_items_stock_applied ON order_items (stock_applied);
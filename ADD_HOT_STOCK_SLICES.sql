@@ -0,0 +1,20 @@
+-- Run this SQL script to add hot-stock slices: stock of hot products claimed by each checkout node, and the leases on node ids
+
+USE zenbuy;
+
+ALTER TABLE product_inventory ADD COLUMN held INT NOT NULL DEFAULT 0;
+ALTER TABLE order_items ADD COLUMN stock_node INT NULL;
+
+CREATE TABLE IF NOT EXISTS hot_stock_slices (
+    product_id BIGINT NOT NULL,
+    node_id INT NOT NULL,
+    allotted INT NOT NULL,
+    PRIMARY KEY (product_id, node_id)
+);
+
+CREATE TABLE IF NOT EXISTS inventory_nodes (
+    node_id INT NOT NULL,
+    owner VARCHAR(128) NOT NULL,
+    renewed_at DATETIME NOT NULL,
+    PRIMARY KEY (node_id)
+);
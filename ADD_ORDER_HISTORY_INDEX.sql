@@ -0,0 +1,5 @@
+-- Run this SQL script to add the index behind keyset-paginated order history
+
+USE zenbuy;
+
+CREATE INDEX idx_orders_user_date_id ON orders (user_id, order_date, id);
@@ -0,0 +1,6 @@
+-- Run this SQL script to add the idempotency key used by POST /api/orders/payment
+
+USE zenbuy;
+
+ALTER TABLE orders ADD COLUMN idempotency_key VARCHAR(191) NULL;
+ALTER TABLE orders ADD CONSTRAINT uk_orders_idempotency_key UNIQUE (idempotency_key);
@@ -0,0 +1,7 @@
+-- Run this SQL script to add the unique index used by GET /api/orders/number/{orderNumber}
+-- Old "ORD-<millis>" numbers can collide; list any duplicates first and renumber them by hand:
+--   SELECT order_number, COUNT(*) FROM orders GROUP BY order_number HAVING COUNT(*) > 1;
+
+USE zenbuy;
+
+ALTER TABLE orders ADD CONSTRAINT uk_orders_order_number UNIQUE (order_number);
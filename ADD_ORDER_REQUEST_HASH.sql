@@ -0,0 +1,5 @@
+-- Run this SQL script to store the request hash checked when POST /api/orders/payment replays an Idempotency-Key
+
+USE zenbuy;
+
+ALTER TABLE orders ADD COLUMN request_hash CHAR(64) NULL;
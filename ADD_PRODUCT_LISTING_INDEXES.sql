@@ -0,0 +1,6 @@
+-- Run this SQL script to add the indexes behind the filtered and sorted product listing
+
+USE zenbuy;
+
+CREATE INDEX idx_product_category_price ON product (category, price, id);
+CREATE INDEX idx_product_price ON product (price, id);
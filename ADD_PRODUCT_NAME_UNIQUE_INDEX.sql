@@ -0,0 +1,7 @@
+-- Run this SQL script to make product names unique; bulk import upserts products by name.
+-- Rename or remove duplicate names first; this lists them:
+-- SELECT name, COUNT(*) FROM product GROUP BY name HAVING COUNT(*) > 1;
+
+USE zenbuy;
+
+CREATE UNIQUE INDEX uk_product_name ON product (name);
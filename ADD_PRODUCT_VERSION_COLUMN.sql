@@ -0,0 +1,5 @@
+-- Run this SQL script to add the optimistic-locking version column to products
+
+USE zenbuy;
+
+ALTER TABLE product ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
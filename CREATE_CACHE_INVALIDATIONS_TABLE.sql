@@ -0,0 +1,11 @@
+-- Run this SQL script to create the change table that keeps node-local caches coherent
+
+USE zenbuy;
+
+CREATE TABLE IF NOT EXISTS cache_invalidations (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    cache_name VARCHAR(64) NOT NULL,
+    cache_key VARCHAR(255) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    INDEX idx_cache_invalidations_created_at (created_at)
+);
@@ -0,0 +1,11 @@
+-- Run this SQL script to create the version counters that keep node-local catalog caches coherent
+
+USE zenbuy;
+
+CREATE TABLE IF NOT EXISTS cache_versions (
+    name VARCHAR(64) PRIMARY KEY,
+    version BIGINT NOT NULL,
+    updated_at DATETIME(6) NOT NULL
+);
+
+INSERT IGNORE INTO cache_versions (name, version, updated_at) VALUES ('catalog', 0, NOW(6));
@@ -0,0 +1,13 @@
+-- Run this SQL script once before deploying the pooled order id generators
+-- Order and OrderItem ids now come from pooled sequences (allocation size 50) instead of
+-- AUTO_INCREMENT, so Hibernate can batch the inserts. MySQL has no sequences, so Hibernate
+-- emulates each one with a single-row table.
+
+USE zenbuy;
+
+CREATE TABLE IF NOT EXISTS orders_seq (next_val BIGINT);
+CREATE TABLE IF NOT EXISTS order_items_seq (next_val BIGINT);
+
+-- Start past the existing ids (plus one allocation block) so no id is handed out twice
+INSERT INTO orders_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM orders;
+INSERT INTO order_items_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM order_items;
@@ -0,0 +1,23 @@
+-- Run this SQL script to move product price, stock and version into the narrow product_inventory table
+
+USE zenbuy;
+
+CREATE TABLE product_inventory (
+    product_id BIGINT NOT NULL PRIMARY KEY,
+    price DOUBLE NOT NULL,
+    stock INT NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+    INDEX idx_inventory_price (price, product_id),
+    CONSTRAINT fk_product_inventory_product FOREIGN KEY (product_id) REFERENCES product (id)
+);
+
+INSERT INTO product_inventory (product_id, price, stock, version)
+SELECT id, price, stock_quantity, version FROM product;
+
+ALTER TABLE product
+    DROP INDEX idx_product_category_price,
+    DROP INDEX idx_product_price,
+    DROP COLUMN price,
+    DROP COLUMN stock_quantity,
+    DROP COLUMN version,
+    ADD INDEX idx_product_category (category, id);
@@ -0,0 +1,78 @@
+package com.zenbuy.benchmark;
+
+import com.zenbuy.BackendApplication;
+import com.zenbuy.model.Product;
+import com.zenbuy.model.User;
+import com.zenbuy.repository.ProductRepository;
+import com.zenbuy.repository.UserRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Starts the dev profile against an in-memory H2 database in MySQL mode, without the web server
+final class BenchmarkContext {
+
+    static final int STOCK = 1_000_000_000;
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        // Command-line arguments override application.properties, which disables the data source
+        return new SpringApplicationBuilder(BackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("dev")
+                .run("--spring.autoconfigure.exclude=",
+                        "--spring.datasource.url=jdbc:h2:mem:zenbuy-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.main.banner-mode=off",
+                        // Benchmarks measure the endpoints, not the per-IP coupon rate limit
+                        "--zenbuy.coupons.validate.rate-per-second=1000000000",
+                        "--logging.level.root=WARN");
+    }
+
+    // Adds products until the catalog holds exactly catalogSize rows and returns all product ids
+    static List<Long> seedCatalog(ConfigurableApplicationContext context, int catalogSize) {
+        ProductRepository productRepository = context.getBean(ProductRepository.class);
+        String[] categories = {"Electronics", "Fashion", "Home & Kitchen", "Books", "Sports & Outdoors"};
+        List<Product> batch = new ArrayList<>();
+        for (long i = productRepository.count(); i < catalogSize; i++) {
+            Product product = new Product();
+            product.setName("Benchmark product " + i);
+            product.setDescription("Generated product " + i + " for benchmarking the catalog and checkout paths");
+            product.setPrice(100 + (i % 5000));
+            product.setImageUrl("/image.png");
+            product.setCategory(categories[(int) (i % categories.length)]);
+            product.setStockQuantity(STOCK);
+            batch.add(product);
+            if (batch.size() == 1000) {
+                productRepository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        productRepository.saveAll(batch);
+
+        // The seeded DataInitializer products get enough stock to never run out either
+        List<Product> products = productRepository.findAll();
+        List<Long> productIds = new ArrayList<>(products.size());
+        for (Product product : products) {
+            product.setStockQuantity(STOCK);
+            productIds.add(product.getId());
+        }
+        productRepository.saveAll(products);
+        return productIds;
+    }
+
+    static Long seedUser(ConfigurableApplicationContext context) {
+        User user = new User();
+        user.setEmail("benchmark-" + UUID.randomUUID() + "@zenbuy.com");
+        user.setName("Benchmark Buyer");
+        user.setProvider("local");
+        return context.getBean(UserRepository.class).save(user).getId();
+    }
+}
@@ -0,0 +1,49 @@
+package com.zenbuy.benchmark;
+
+import com.zenbuy.model.Product;
+import com.zenbuy.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ProductService.getAllProducts at several catalog sizes, on one thread and on eight threads
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        productService = context.getBean(ProductService.class);
+        BenchmarkContext.seedCatalog(context, catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<Product> listCatalog() {
+        return productService.getAllProducts();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<Product> listCatalogEightThreads() {
+        return productService.getAllProducts();
+    }
+}
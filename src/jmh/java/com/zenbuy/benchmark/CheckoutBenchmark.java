@@ -0,0 +1,92 @@
+package com.zenbuy.benchmark;
+
+import com.zenbuy.model.Order;
+import com.zenbuy.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// OrderService.createOrder with one and ten line items, on one thread and on eight threads.
+// The contended variant sends every thread to the same SKU to measure row-lock contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    @Param({"100", "10000"})
+    public int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private Long userId;
+    private List<Long> productIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        orderService = context.getBean(OrderService.class);
+        productIds = BenchmarkContext.seedCatalog(context, catalogSize);
+        userId = BenchmarkContext.seedUser(context);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Order singleItemCheckout() {
+        return orderService.createOrder(userId, request(1, false));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Order multiItemCheckout() {
+        return orderService.createOrder(userId, request(10, false));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Order multiItemCheckoutEightThreads() {
+        return orderService.createOrder(userId, request(10, false));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Order sameSkuCheckoutEightThreads() {
+        return orderService.createOrder(userId, request(1, true));
+    }
+
+    private OrderService.OrderRequest request(int lines, boolean sameSku) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<OrderService.OrderItemRequest> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            OrderService.OrderItemRequest item = new OrderService.OrderItemRequest();
+            item.setProductId(sameSku ? productIds.get(0) : productIds.get(random.nextInt(productIds.size())));
+            item.setName("Benchmark product");
+            item.setPrice(100);
+            item.setQuantity(1);
+            items.add(item);
+        }
+        OrderService.ShippingAddress address = new OrderService.ShippingAddress();
+        address.setFlatNo("1");
+        address.setLocality("Benchmark Street");
+        address.setCity("Pune");
+        address.setPincode("411001");
+
+        OrderService.OrderRequest request = new OrderService.OrderRequest();
+        request.setItems(items);
+        request.setSubtotal(100.0 * lines);
+        request.setTotal(100.0 * lines);
+        request.setShippingAddress(address);
+        return request;
+    }
+}
@@ -0,0 +1,99 @@
+package com.zenbuy.benchmark;
+
+import com.zenbuy.controller.CouponController;
+import com.zenbuy.model.Coupon;
+import com.zenbuy.repository.CouponRepository;
+import com.zenbuy.service.CouponEngine;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// CouponController.validateCoupon for known and unknown codes, on one thread and on eight threads, and
+// ranking every active coupon for a cart as POST /api/coupons/best does
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponBenchmark {
+
+    @Param({"10", "1000"})
+    public int couponCount;
+
+    private ConfigurableApplicationContext context;
+    private CouponController couponController;
+    private CouponEngine couponEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        couponController = context.getBean(CouponController.class);
+        List<Coupon> coupons = new ArrayList<>(couponCount);
+        for (int i = 0; i < couponCount; i++) {
+            Coupon coupon = new Coupon();
+            coupon.setCode("BENCH" + i);
+            coupon.setDiscountType(i % 2 == 0 ? "PERCENTAGE" : "FLAT");
+            coupon.setDiscountValue(i % 2 == 0 ? 10.0 : 100.0);
+            coupon.setValidFrom(LocalDateTime.now().minusDays(1));
+            coupon.setValidUntil(LocalDateTime.now().plusDays(30));
+            coupon.setMinPurchaseAmount(500.0);
+            coupons.add(coupon);
+        }
+        context.getBean(CouponRepository.class).saveAll(coupons);
+        // The engine loaded the coupons at startup, before these existed
+        couponEngine = context.getBean(CouponEngine.class);
+        couponEngine.reloadAll();
+    }
+
+    // Each benchmark thread validates as its own client IP
+    @State(Scope.Thread)
+    public static class Client {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            request.setRemoteAddr("10.0.0." + Thread.currentThread().getId() % 256);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResponseEntity<?> validateKnownCode(Client client) {
+        return couponController.validateCoupon(knownCode(), 1000.0, client.request);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ResponseEntity<?> validateKnownCodeEightThreads(Client client) {
+        return couponController.validateCoupon(knownCode(), 1000.0, client.request);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ResponseEntity<?> validateUnknownCodeEightThreads(Client client) {
+        return couponController.validateCoupon("NOPE" + ThreadLocalRandom.current().nextInt(), 1000.0, client.request);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<CouponEngine.RankedCoupon> rankBestCoupons() {
+        return couponEngine.rank(400 + ThreadLocalRandom.current().nextInt(1000), 20);
+    }
+
+    private String knownCode() {
+        return "bench" + ThreadLocalRandom.current().nextInt(couponCount);
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -100,23 +101,17 @@ public class DataInitializer implements CommandLineRunner {
                 createProduct("Coffee Beans", "Arabica coffee beans (500g)", 899.00, "https://images.unsplash.com/photo-1559056199-641a0ac8b55e?w=500", "Food & Beverages", 60)
         );
 
-        // Get existing product names for efficient duplicate checking
-        Set<String> existingNames = new HashSet<>();
-        productRepository.findAll().forEach(p -> {
-            if (p.getName() != null) {
-                existingNames.add(p.getName());
-            }
-        });
-        
-        // Save products (skip if they already exist)
-        int savedCount = 0;
+        // Only the names of the seed products are looked up, and the new ones are saved in one call
+        Set<String> existingNames = new HashSet<>(productRepository.findExistingNames(
+                products.stream().map(Product::getName).toList()));
+        List<Product> newProducts = new ArrayList<>();
         for (Product product : products) {
-            if (product.getName() != null && !existingNames.contains(product.getName())) {
-                productRepository.save(product);
-                existingNames.add(product.getName()); // Add to set to avoid duplicates in same run
-                savedCount++;
+            if (product.getName() != null && existingNames.add(product.getName())) {
+                newProducts.add(product);
             }
         }
+        productRepository.saveAll(newProducts);
+        int savedCount = newProducts.size();
         
         System.out.println("Products initialization complete. Added " + savedCount + " new products. Total products: " + productRepository.count());
         
@@ -5,10 +5,22 @@ import com.zenbuy.model.Coupon;
 import com.zenbuy.repository.UserRepository;
 import com.zenbuy.repository.ProductRepository;
 import com.zenbuy.repository.CouponRepository;
+import com.zenbuy.service.CouponEngine;
+import com.zenbuy.service.CouponRateLimiter;
+import com.zenbuy.service.CouponRedemptionService;
+import com.zenbuy.service.InventoryReservationEngine;
+import com.zenbuy.service.OrderHistoryCache;
+import com.zenbuy.service.ProductBulkService;
+import com.zenbuy.service.ProductCatalogCache;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.context.annotation.Profile;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -25,11 +37,29 @@ public class AdminController {
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
     private final CouponRepository couponRepository;
+    private final InventoryReservationEngine inventoryEngine;
+    private final OrderHistoryCache orderHistoryCache;
+    private final ProductCatalogCache productCatalogCache;
+    private final ProductBulkService productBulkService;
+    private final CouponEngine couponEngine;
+    private final CouponRedemptionService couponRedemptionService;
+    private final CouponRateLimiter couponRateLimiter;
 
-    public AdminController(UserRepository userRepository, ProductRepository productRepository, CouponRepository couponRepository) {
+    public AdminController(UserRepository userRepository, ProductRepository productRepository, CouponRepository couponRepository,
+                           InventoryReservationEngine inventoryEngine, OrderHistoryCache orderHistoryCache,
+                           ProductCatalogCache productCatalogCache, ProductBulkService productBulkService,
+                           CouponEngine couponEngine, CouponRedemptionService couponRedemptionService,
+                           CouponRateLimiter couponRateLimiter) {
         this.userRepository = userRepository;
         this.productRepository = productRepository;
         this.couponRepository = couponRepository;
+        this.inventoryEngine = inventoryEngine;
+        this.orderHistoryCache = orderHistoryCache;
+        this.productCatalogCache = productCatalogCache;
+        this.productBulkService = productBulkService;
+        this.couponEngine = couponEngine;
+        this.couponRedemptionService = couponRedemptionService;
+        this.couponRateLimiter = couponRateLimiter;
     }
 
     @GetMapping("/stats")
@@ -76,6 +106,91 @@ public class AdminController {
         }
     }
 
+    // Streams the request body (CSV with a header row, or NDJSON) into batched upserts keyed on product name
+    @PostMapping("/products/import")
+    public ResponseEntity<?> importProducts(HttpServletRequest request,
+                                            @RequestParam(defaultValue = "csv") String format) {
+        try {
+            return ResponseEntity.ok(productBulkService.importProducts(request.getInputStream(), format));
+        } catch (IOException | RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    // Warehouse stock sync: CSV (productId,stock or productId,delta) or NDJSON {"productId":..,"stock":..|"delta":..}
+    @PostMapping("/products/stock")
+    public ResponseEntity<?> adjustStock(HttpServletRequest request,
+                                         @RequestParam(defaultValue = "csv") String format) {
+        try {
+            return ResponseEntity.ok(productBulkService.adjustStock(request.getInputStream(), format));
+        } catch (IOException | RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    // Progress of running imports and the results of recent ones
+    @GetMapping("/products/imports")
+    public ResponseEntity<List<ProductBulkService.ImportStatus>> getImports() {
+        return ResponseEntity.ok(productBulkService.getImports());
+    }
+
+    @GetMapping("/products/imports/{id}")
+    public ResponseEntity<?> getImport(@PathVariable String id) {
+        ProductBulkService.ImportStatus status = productBulkService.getImport(id);
+        if (status == null) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Import not found");
+            return ResponseEntity.status(404).body(error);
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/products/export")
+    public ResponseEntity<?> exportProducts(@RequestParam(defaultValue = "csv") String format) {
+        boolean csv = format.equalsIgnoreCase("csv");
+        if (!csv && !format.equalsIgnoreCase("ndjson")) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Invalid format. Allowed: [csv, ndjson]");
+            return ResponseEntity.badRequest().body(error);
+        }
+        StreamingResponseBody body = out -> productBulkService.exportProducts(out, format);
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : new MediaType("application", "x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("orderHistory", orderHistoryCache.stats());
+        stats.put("catalog", productCatalogCache.stats());
+        stats.put("coupons", couponEngine.stats());
+        stats.put("couponRateLimiter", couponRateLimiter.stats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/inventory/consistency")
+    public ResponseEntity<List<Map<String, Object>>> checkInventoryConsistency() {
+        return ResponseEntity.ok(inventoryEngine.checkConsistency());
+    }
+
+    @PostMapping("/inventory/rebuild")
+    public ResponseEntity<?> rebuildInventory() {
+        try {
+            inventoryEngine.rebuild();
+            return ResponseEntity.ok(inventoryEngine.checkConsistency());
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
     @GetMapping("/coupons")
     public ResponseEntity<List<Coupon>> getAllCoupons() {
         List<Coupon> coupons = couponRepository.findAll();
@@ -104,6 +219,7 @@ public class AdminController {
             coupon.setDescription(request.getDescription());
 
             Coupon savedCoupon = couponRepository.save(coupon);
+            couponEngine.invalidate(savedCoupon.getId());
             return ResponseEntity.ok(savedCoupon);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
@@ -118,7 +234,9 @@ public class AdminController {
             if (!couponRepository.existsById(id)) {
                 return ResponseEntity.notFound().build();
             }
+            couponRedemptionService.resetPool(id);
             couponRepository.deleteById(id);
+            couponEngine.invalidate(id);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -155,6 +273,9 @@ public class AdminController {
             coupon.setDescription(request.getDescription());
 
             Coupon updatedCoupon = couponRepository.save(coupon);
+            // A new maxUses needs a new token pool
+            couponRedemptionService.resetPool(id);
+            couponEngine.invalidate(id);
             return ResponseEntity.ok(updatedCoupon);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
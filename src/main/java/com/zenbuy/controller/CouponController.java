@@ -1,17 +1,22 @@
 package com.zenbuy.controller;
 
 import com.zenbuy.model.Coupon;
-import com.zenbuy.repository.CouponRepository;
+import com.zenbuy.service.CouponEngine;
+import com.zenbuy.service.CouponRateLimiter;
+import com.zenbuy.service.OrderService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.context.annotation.Profile;
 
 
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/coupons")
@@ -20,62 +25,37 @@ import java.util.Optional;
 
 public class CouponController {
 
-    private final CouponRepository couponRepository;
+    private final CouponEngine couponEngine;
+    private final CouponRateLimiter rateLimiter;
 
-    public CouponController(CouponRepository couponRepository) {
-        this.couponRepository = couponRepository;
+    public CouponController(CouponEngine couponEngine, CouponRateLimiter rateLimiter) {
+        this.couponEngine = couponEngine;
+        this.rateLimiter = rateLimiter;
     }
 
     @GetMapping("/validate/{code}")
-    public ResponseEntity<?> validateCoupon(@PathVariable String code, @RequestParam(required = false) Double orderAmount) {
+    public ResponseEntity<?> validateCoupon(@PathVariable String code, @RequestParam(required = false) Double orderAmount,
+                                            HttpServletRequest request) {
+        // The client address resolved from X-Forwarded-For behind trusted proxies (server.forward-headers-strategy)
+        long retryAfter = rateLimiter.tryAcquire(request.getRemoteAddr());
+        if (retryAfter > 0) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Too many coupon checks, please try again shortly");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                    .body(error);
+        }
         try {
-            Optional<Coupon> couponOpt = couponRepository.findByCode(code.toUpperCase());
-            
-            if (couponOpt.isEmpty()) {
+            // Answered from memory: the coupon's compiled rules are checked in order and the first failure is returned
+            CouponEngine.Validation validation = couponEngine.validate(code, orderAmount);
+            if (!validation.valid()) {
                 Map<String, String> error = new HashMap<>();
-                error.put("error", "Invalid coupon code");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            Coupon coupon = couponOpt.get();
-            LocalDateTime now = LocalDateTime.now();
-
-            // Check if coupon is active
-            if (!coupon.getIsActive()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "This coupon is no longer active");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check validity period
-            // Coupon is valid if: validFrom <= now <= validUntil (inclusive)
-            if (coupon.getValidFrom() != null && now.isBefore(coupon.getValidFrom())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "This coupon is not yet valid");
-                return ResponseEntity.badRequest().body(error);
-            }
-            // Check if expired: now must be <= validUntil (inclusive), so expired if now > validUntil
-            if (coupon.getValidUntil() != null && now.isAfter(coupon.getValidUntil())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "This coupon has expired");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check max uses
-            if (coupon.getMaxUses() != null && coupon.getUsedCount() >= coupon.getMaxUses()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "This coupon has reached its usage limit");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check minimum purchase amount
-            if (orderAmount != null && coupon.getMinPurchaseAmount() != null && orderAmount < coupon.getMinPurchaseAmount()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Minimum purchase amount of ₹" + coupon.getMinPurchaseAmount() + " required");
+                error.put("error", validation.error());
                 return ResponseEntity.badRequest().body(error);
             }
 
             // Return coupon details
+            Coupon coupon = validation.coupon();
             Map<String, Object> response = new HashMap<>();
             response.put("valid", true);
             response.put("code", coupon.getCode());
@@ -93,9 +73,64 @@ public class CouponController {
 
     @GetMapping("/active")
     public ResponseEntity<List<Coupon>> getActiveCoupons() {
-        LocalDateTime now = LocalDateTime.now();
-        List<Coupon> coupons = couponRepository.findByIsActiveTrueAndValidFromLessThanEqualAndValidUntilGreaterThanEqual(now, now);
-        return ResponseEntity.ok(coupons);
+        // Served from the engine's active set, which the timing wheel keeps in step with validFrom/validUntil
+        return ResponseEntity.ok(couponEngine.activeCoupons());
+    }
+
+    @PostMapping("/best")
+    public ResponseEntity<?> getBestCoupons(@RequestBody CartRequest request,
+                                            @RequestParam(defaultValue = "20") int limit) {
+        // Checkout discounts the request subtotal, so rank against it; fall back to the item totals
+        double subtotal = 0;
+        if (request != null && request.getSubtotal() != null) {
+            subtotal = request.getSubtotal();
+        } else if (request != null && request.getItems() != null) {
+            for (OrderService.OrderItemRequest item : request.getItems()) {
+                subtotal += item.getPrice() * item.getQuantity();
+            }
+        }
+        if (subtotal < 0 || Double.isNaN(subtotal)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Subtotal must not be negative");
+            return ResponseEntity.badRequest().body(error);
+        }
+
+        List<Map<String, Object>> coupons = new ArrayList<>();
+        for (CouponEngine.RankedCoupon ranked : couponEngine.rank(subtotal, Math.max(1, Math.min(limit, 100)))) {
+            Coupon coupon = ranked.coupon();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("code", coupon.getCode());
+            row.put("discountType", coupon.getDiscountType());
+            row.put("discountValue", coupon.getDiscountValue());
+            row.put("description", coupon.getDescription());
+            row.put("discount", ranked.discount());
+            coupons.add(row);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("subtotal", subtotal);
+        response.put("coupons", coupons);
+        return ResponseEntity.ok(response);
+    }
+
+    static class CartRequest {
+        private List<OrderService.OrderItemRequest> items;
+        private Double subtotal;
+
+        public List<OrderService.OrderItemRequest> getItems() {
+            return items;
+        }
+
+        public void setItems(List<OrderService.OrderItemRequest> items) {
+            this.items = items;
+        }
+
+        public Double getSubtotal() {
+            return subtotal;
+        }
+
+        public void setSubtotal(Double subtotal) {
+            this.subtotal = subtotal;
+        }
     }
 }
 
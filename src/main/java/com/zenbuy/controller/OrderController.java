@@ -2,15 +2,27 @@ package com.zenbuy.controller;
 import org.springframework.context.annotation.Profile;
 
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zenbuy.dto.OrderView;
 import com.zenbuy.model.Order;
+import com.zenbuy.service.IdempotencyStore;
+import com.zenbuy.service.OrderIntakeService;
+import org.springframework.beans.factory.ObjectProvider;
 import com.zenbuy.service.OrderService;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -19,31 +31,78 @@ import java.util.Map;
 public class OrderController {
 
     private final OrderService orderService;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectProvider<OrderIntakeService> intakeService;
+    private final ObjectMapper objectMapper;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, IdempotencyStore idempotencyStore,
+                           ObjectProvider<OrderIntakeService> intakeService, ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.idempotencyStore = idempotencyStore;
+        this.intakeService = intakeService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/payment")
-    public ResponseEntity<?> processPayment(@RequestBody PaymentRequest request) {
+    public ResponseEntity<?> processPayment(@RequestBody PaymentRequest request,
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        // Validate request
+        if (request == null || request.getUserId() == null || request.getOrder() == null) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Invalid request: userId and order are required");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return placeOrder(request, null, null);
+        }
+        if (idempotencyKey.length() > 128) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Idempotency-Key must be at most 128 characters");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        // Retries with the same key and body get the original response instead of a second order
+        String scopedKey = request.getUserId() + ":" + idempotencyKey;
+        String requestHash = requestHash(request);
         try {
-            // Validate request
-            if (request == null || request.getUserId() == null || request.getOrder() == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Invalid request: userId and order are required");
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            return idempotencyStore.execute(scopedKey, requestHash, () -> placeOrder(request, scopedKey, requestHash));
+        } catch (IllegalArgumentException e) {
+            return keyReused();
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+    }
+
+    private ResponseEntity<?> placeOrder(PaymentRequest request, String idempotencyKey, String requestHash) {
+        try {
+            if (idempotencyKey != null) {
+                // The key may already have been processed by another node
+                Optional<Order> existing = orderService.findByIdempotencyKey(idempotencyKey);
+                if (existing.isPresent()) {
+                    return replayed(existing.get(), requestHash);
+                }
             }
-            
-            Order order = orderService.createOrder(request.getUserId(), request.getOrder());
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Payment successful! Order placed successfully!");
-            response.put("orderId", order.getId());
-            response.put("orderNumber", order.getOrderNumber());
-            response.put("status", order.getStatus());
-            response.put("paymentStatus", order.getPaymentStatus());
-            
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+
+            Order order = orderService.placeOrder(request.getUserId(), request.getOrder(), idempotencyKey, requestHash);
+            return orderPlaced(order);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request with the same key won the unique constraint on another node
+            Optional<Order> existing = idempotencyKey != null
+                    ? orderService.findByIdempotencyKey(idempotencyKey) : Optional.empty();
+            if (existing.isPresent()) {
+                return replayed(existing.get(), requestHash);
+            }
+            e.printStackTrace(); // Log the exception
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "An error occurred while processing payment");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (ConcurrencyFailureException e) {
+            // Still conflicting after the checkout retries; nothing was committed
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "The order conflicted with concurrent updates, please retry");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
         } catch (RuntimeException e) {
             e.printStackTrace(); // Log the exception
             Map<String, String> error = new HashMap<>();
@@ -57,9 +116,91 @@ public class OrderController {
         }
     }
 
+    // Orders stored before request hashes were recorded have none and are replayed as before
+    private ResponseEntity<?> replayed(Order order, String requestHash) {
+        if (order.getRequestHash() != null && !order.getRequestHash().equals(requestHash)) {
+            return keyReused();
+        }
+        return orderPlaced(order);
+    }
+
+    private ResponseEntity<?> keyReused() {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Idempotency-Key was already used with a different request");
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+    }
+
+    // SHA-256 of the request as re-serialized from the parsed body, so formatting and key order do not matter
+    private String requestHash(PaymentRequest request) {
+        try {
+            byte[] canonical = objectMapper.writeValueAsBytes(request);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash the payment request", e);
+        }
+    }
+
+    private ResponseEntity<?> orderPlaced(Order order) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Payment successful! Order placed successfully!");
+        response.put("orderId", order.getId());
+        response.put("orderNumber", order.getOrderNumber());
+        response.put("status", order.getStatus());
+        response.put("paymentStatus", order.getPaymentStatus());
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    // Asynchronous checkout: queue the order and let the client poll for the result
+    @PostMapping("/intake")
+    public ResponseEntity<?> submitOrder(@RequestBody PaymentRequest request) {
+        OrderIntakeService intake = intakeService.getIfAvailable();
+        if (intake == null) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Asynchronous order intake is disabled");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        try {
+            String trackingId = intake.submit(request != null ? request.getUserId() : null,
+                    request != null ? request.getOrder() : null);
+            if (trackingId == null) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Too many orders in progress, please retry shortly");
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(error);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("trackingId", trackingId);
+            response.put("state", "QUEUED");
+            response.put("statusUrl", "/api/orders/intake/" + trackingId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+    }
+
+    @GetMapping("/intake/{trackingId}")
+    public ResponseEntity<?> getIntakeStatus(@PathVariable String trackingId) {
+        OrderIntakeService intake = intakeService.getIfAvailable();
+        OrderIntakeService.IntakeStatus status = intake != null ? intake.getStatus(trackingId) : null;
+        if (status == null) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Unknown tracking id");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    // Without cursor/size the full history is returned as before; with either, one keyset page
     @GetMapping("/user/{userId}")
-    public ResponseEntity<?> getUserOrders(@PathVariable Long userId) {
+    public ResponseEntity<?> getUserOrders(@PathVariable Long userId,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size) {
         try {
+            if (cursor != null || size != null) {
+                return ResponseEntity.ok(orderService.getUserOrdersPage(userId, cursor, size));
+            }
             List<Order> orders = orderService.getUserOrders(userId);
             return ResponseEntity.ok(orders);
         } catch (RuntimeException e) {
@@ -72,7 +213,36 @@ public class OrderController {
     @GetMapping("/{orderId}")
     public ResponseEntity<?> getOrder(@PathVariable Long orderId) {
         try {
-            Order order = orderService.getOrderById(orderId);
+            OrderView order = orderService.getOrderView(orderId);
+            return ResponseEntity.ok(order);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    @PutMapping("/{orderId}/status")
+    public ResponseEntity<?> updateOrderStatus(@PathVariable Long orderId, @RequestBody Map<String, String> request) {
+        try {
+            Order order = orderService.updateOrderStatus(orderId, request.get("status"));
+            Map<String, Object> response = new HashMap<>();
+            response.put("orderId", order.getId());
+            response.put("orderNumber", order.getOrderNumber());
+            response.put("status", order.getStatus());
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            HttpStatus status = "Order not found".equals(e.getMessage()) ? HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+            return ResponseEntity.status(status).body(error);
+        }
+    }
+
+    @GetMapping("/number/{orderNumber}")
+    public ResponseEntity<?> getOrderByNumber(@PathVariable String orderNumber) {
+        try {
+            OrderView order = orderService.getOrderViewByNumber(orderNumber);
             return ResponseEntity.ok(order);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
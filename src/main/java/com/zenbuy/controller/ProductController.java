@@ -1,12 +1,23 @@
 package com.zenbuy.controller;
 
 import com.zenbuy.model.Product;
+import com.zenbuy.service.CatalogSnapshotService;
+import com.zenbuy.service.ProductFacetIndex;
+import com.zenbuy.service.ProductSearchIndex;
 import com.zenbuy.service.ProductService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.context.annotation.Profile;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/products")
@@ -15,14 +26,91 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService service;
+    private final ProductSearchIndex searchIndex;
+    private final ProductFacetIndex facetIndex;
+    private final ObjectProvider<CatalogSnapshotService> snapshotService;
 
-    public ProductController(ProductService service) {
+    public ProductController(ProductService service, ProductSearchIndex searchIndex, ProductFacetIndex facetIndex,
+                             ObjectProvider<CatalogSnapshotService> snapshotService) {
         this.service = service;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.snapshotService = snapshotService;
     }
 
+    // Without parameters the whole catalog is returned as before; with any of them, one page of summaries.
+    // A matching If-None-Match gets a 304 before anything is loaded or serialized.
     @GetMapping
-    public List<Product> getProducts() {
-        return service.getAllProducts();
+    public ResponseEntity<?> getProducts(WebRequest request,
+                                         @RequestParam(required = false) Integer page,
+                                         @RequestParam(required = false) Integer size,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) String category,
+                                         @RequestParam(required = false) Double minPrice,
+                                         @RequestParam(required = false) Double maxPrice,
+                                         @RequestParam(required = false) String sort) {
+        boolean legacy = page == null && size == null && cursor == null && category == null
+                && minPrice == null && maxPrice == null && sort == null;
+        CatalogSnapshotService snapshots = snapshotService.getIfAvailable();
+        if (legacy && snapshots != null) {
+            // The snapshot carries the ETag it was rendered for, which may trail the current one while it rebuilds
+            CatalogSnapshotService.Snapshot snapshot = snapshots.current();
+            return snapshotBody(snapshot, snapshot.all(), request);
+        }
+        if (request.checkNotModified(service.getListingETag())) {
+            return null;
+        }
+        if (legacy) {
+            List<Product> products = service.getAllProducts();
+            return ResponseEntity.ok(products);
+        }
+        try {
+            return ResponseEntity.ok(service.getProductPage(page, size, cursor, category, minPrice, maxPrice, sort));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+    }
+
+    @GetMapping("/category/{category}")
+    public ResponseEntity<?> getProductsByCategory(@PathVariable String category, WebRequest request) {
+        CatalogSnapshotService snapshots = snapshotService.getIfAvailable();
+        if (snapshots != null) {
+            CatalogSnapshotService.Snapshot snapshot = snapshots.current();
+            CatalogSnapshotService.Body body = snapshot.category(category);
+            if (body == null) {
+                return request.checkNotModified(snapshot.etag()) ? null : ResponseEntity.ok(List.of());
+            }
+            return snapshotBody(snapshot, body, request);
+        }
+        if (request.checkNotModified(service.getListingETag())) {
+            return null;
+        }
+        List<Product> products = service.getProductsByCategory(category);
+        return ResponseEntity.ok(products);
+    }
+
+    // Served from the in-memory index; never touches the database
+    @GetMapping("/search")
+    public ProductSearchIndex.SearchResults searchProducts(@RequestParam("q") String query,
+                                                           @RequestParam(required = false) Integer limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    // Sidebar counts from the in-memory columnar index; never touches the database
+    @GetMapping("/facets")
+    public ResponseEntity<?> getFacets(@RequestParam(required = false) String category,
+                                       @RequestParam(required = false) Double minPrice,
+                                       @RequestParam(required = false) Double maxPrice,
+                                       @RequestParam(defaultValue = "false") boolean inStock) {
+        try {
+            return ResponseEntity.ok(facetIndex.facets(category, minPrice, maxPrice, inStock));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
     }
 
     @PostMapping
@@ -31,8 +119,21 @@ public class ProductController {
     }
 
     @PutMapping("/{id}")
-    public Product updateProduct(@PathVariable Long id, @RequestBody Product product) {
-        return service.updateProduct(id, product);
+    public ResponseEntity<?> updateProduct(@PathVariable Long id, @RequestBody Product product) {
+        try {
+            return ResponseEntity.ok(service.updateProduct(id, product));
+        } catch (RuntimeException e) {
+            return updateFailed(e);
+        }
+    }
+
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patchProduct(@PathVariable Long id, @RequestBody ProductService.ProductPatch patch) {
+        try {
+            return ResponseEntity.ok(service.patchProduct(id, patch));
+        } catch (RuntimeException e) {
+            return updateFailed(e);
+        }
     }
 
     @DeleteMapping("/{id}")
@@ -46,13 +147,65 @@ public class ProductController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProduct(@PathVariable Long id) {
+    public ResponseEntity<Product> getProduct(@PathVariable Long id, WebRequest request) {
+        Product product;
         try {
-            Product product = service.getProductById(id);
-            return ResponseEntity.ok(product);
+            product = service.getProductById(id);
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
+        // Usually served from the product cache, so a 304 still costs no query
+        if (request.checkNotModified(service.getProductETag(product))) {
+            return null;
+        }
+        return ResponseEntity.ok(product);
+    }
+
+    // 409 when the product was changed since the client read it (or by a concurrent checkout)
+    private ResponseEntity<Map<String, String>> updateFailed(RuntimeException e) {
+        Map<String, String> error = new HashMap<>();
+        if (e instanceof OptimisticLockingFailureException) {
+            error.put("error", "Product was modified concurrently; reload it and retry");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+        error.put("error", e.getMessage());
+        HttpStatus status = "Product not found".equals(e.getMessage()) ? HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+        return ResponseEntity.status(status).body(error);
     }
-}
 
+    // Writes a pre-rendered body as is, gzip-encoded when the client accepts it. The gzip bytes are a different
+    // representation from the identity bytes, so they get their own strong ETag.
+    private ResponseEntity<byte[]> snapshotBody(CatalogSnapshotService.Snapshot snapshot, CatalogSnapshotService.Body body,
+                                                WebRequest request) {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String etag = snapshot.etag();
+        if (gzip) {
+            etag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        byte[] bytes = gzip ? body.gzip() : body.identity();
+        return response.contentLength(bytes.length).body(bytes);
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,4 @@
+package com.zenbuy.dto;
+
+public record OrderItemView(Long id, String productName, double price, int quantity, String imageUrl) {
+}
@@ -0,0 +1,40 @@
+package com.zenbuy.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Immutable read model for a single order; serializes to the same JSON shape as the Order entity
+public record OrderView(
+        Long id,
+        String orderNumber,
+        String status,
+        String paymentMethod,
+        String paymentStatus,
+        String transactionId,
+        String couponCode,
+        double subtotal,
+        double shipping,
+        double discount,
+        double total,
+        LocalDateTime orderDate,
+        String shippingFlatNo,
+        String shippingLocality,
+        String shippingCity,
+        String shippingPincode,
+        List<OrderItemView> items) {
+
+    // Header-only constructor used by the JPQL projection; items are attached with withItems
+    public OrderView(Long id, String orderNumber, String status, String paymentMethod, String paymentStatus,
+                     String transactionId, String couponCode, double subtotal, double shipping, double discount,
+                     double total, LocalDateTime orderDate, String shippingFlatNo, String shippingLocality,
+                     String shippingCity, String shippingPincode) {
+        this(id, orderNumber, status, paymentMethod, paymentStatus, transactionId, couponCode, subtotal, shipping,
+                discount, total, orderDate, shippingFlatNo, shippingLocality, shippingCity, shippingPincode, List.of());
+    }
+
+    public OrderView withItems(List<OrderItemView> items) {
+        return new OrderView(id, orderNumber, status, paymentMethod, paymentStatus, transactionId, couponCode, subtotal,
+                shipping, discount, total, orderDate, shippingFlatNo, shippingLocality, shippingCity, shippingPincode,
+                List.copyOf(items));
+    }
+}
@@ -0,0 +1,13 @@
+package com.zenbuy.dto;
+
+import com.zenbuy.model.Product;
+
+// Listing row for the catalog pages; everything on Product except the description
+public record ProductSummary(Long id, String name, double price, String imageUrl, String category,
+                             int stockQuantity, boolean hot) {
+
+    public static ProductSummary from(Product product) {
+        return new ProductSummary(product.getId(), product.getName(), product.getPrice(), product.getImageUrl(),
+                product.getCategory(), product.getStockQuantity(), product.isHot());
+    }
+}
@@ -0,0 +1,28 @@
+package com.zenbuy.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Change-table row telling every node to evict one key from one of its local caches
+@Entity
+@Table(name = "cache_invalidations", indexes = @Index(name = "idx_cache_invalidations_created_at", columnList = "created_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String cacheName;
+
+    @Column(nullable = false)
+    private String cacheKey;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
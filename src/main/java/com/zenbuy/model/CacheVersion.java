@@ -0,0 +1,25 @@
+package com.zenbuy.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Shared version counter for one node-local cache; nodes poll it and drop their copy when it moves
+@Entity
+@Table(name = "cache_versions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheVersion {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false)
+    private long version;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,25 @@
+package com.zenbuy.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// What one bump of the shared catalog counter changed, so other nodes can evict just those products
+@Entity
+@Table(name = "catalog_changes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogChange {
+
+    // The cache_versions value the bump produced
+    @Id
+    private Long version;
+
+    // Comma-separated product ids; null means any product
+    @Column(columnDefinition = "TEXT")
+    private String productIds;
+
+    // Only stock levels changed, so search and facet indexes can refresh the rows instead of rebuilding
+    @Column(nullable = false)
+    private boolean stockOnly;
+}
@@ -2,10 +2,13 @@ package com.zenbuy.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 
+// Dynamic update keeps unchanged columns out of admin edits
 @Entity
+@DynamicUpdate
 @Table(name = "coupons")
 @Data
 @NoArgsConstructor
@@ -35,6 +38,9 @@ public class Coupon {
     private Boolean isActive = true;
 
     private Integer maxUses; // null means unlimited
+    // Only ever changed by SQL increments from checkout and the token pool roll-up. Not updatable, so an
+    // admin edit that merges a copy read before some redemptions cannot write the old count back.
+    @Column(updatable = false)
     private Integer usedCount = 0;
 
     private Double minPurchaseAmount; // Minimum order amount to use this coupon
@@ -0,0 +1,38 @@
+package com.zenbuy.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+// One stripe of a popular coupon's pre-allocated uses. Checkout takes a token from a random stripe with a
+// guarded UPDATE, so concurrent redemptions of one code lock different rows instead of queuing on the coupon.
+@Entity
+@Table(name = "coupon_token_pool")
+@IdClass(CouponTokenStripe.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponTokenStripe {
+
+    @Id
+    private Long couponId;
+
+    @Id
+    private Integer stripe;
+
+    // Tokens left in this stripe at the last roll-up into coupons.used_count
+    @Column(nullable = false)
+    private int baseline;
+
+    @Column(nullable = false)
+    private int remaining;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long couponId;
+        private Integer stripe;
+    }
+}
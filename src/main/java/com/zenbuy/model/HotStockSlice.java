@@ -0,0 +1,36 @@
+package com.zenbuy.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+// Stock of a hot product claimed by one checkout node. The node sells it from its in-memory counter, so
+// nodes never sell the same units; product_inventory.held is the sum of all slices of the product. A slice
+// lives as long as the lease on its node id (InventoryNode).
+@Entity
+@Table(name = "hot_stock_slices")
+@IdClass(HotStockSlice.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotStockSlice {
+
+    @Id
+    private Long productId;
+
+    @Id
+    private Integer nodeId;
+
+    // Units claimed and not yet written back as sold, including units sold but not yet flushed
+    @Column(nullable = false)
+    private int allotted;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long productId;
+        private Integer nodeId;
+    }
+}
@@ -0,0 +1,26 @@
+package com.zenbuy.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Lease on a checkout node id. Hot-stock slices belong to a node id, so two live processes must never use the
+// same one: a process keeps its id only while it renews the lease, and an expired id can be taken over.
+@Entity
+@Table(name = "inventory_nodes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryNode {
+
+    @Id
+    private Integer nodeId;
+
+    // Random token of the process holding the lease, with its host name for diagnostics
+    @Column(nullable = false, length = 128)
+    private String owner;
+
+    @Column(nullable = false)
+    private LocalDateTime renewedAt;
+}
@@ -3,20 +3,23 @@ package com.zenbuy.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = @Index(name = "idx_orders_user_date_id", columnList = "user_id, order_date, id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
 
+    // Pooled sequence (a table on MySQL) instead of IDENTITY so Hibernate can batch the inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -24,7 +27,9 @@ public class Order {
     @JsonIgnore
     private User user;
 
+    // Items of up to 100 orders in the persistence context are loaded with one IN query
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 100)
     private List<OrderItem> items = new ArrayList<>();
 
     @Column(nullable = false)
@@ -64,12 +69,23 @@ public class Order {
     @Column(nullable = false)
     private String shippingPincode;
 
-    @Column(nullable = true)
-    private String orderNumber;
+    @Column(nullable = true, unique = true)
+    private String orderNumber; // Set by OrderNumberGenerator
 
     @Column(nullable = true)
     private String transactionId; // For PayU and other payment gateways
 
+    @Column(nullable = true, length = 64)
+    private String couponCode; // Coupon redeemed by this order; the discount is computed from it
+
+    @Column(nullable = true, unique = true, length = 191)
+    @JsonIgnore
+    private String idempotencyKey; // userId + ":" + Idempotency-Key header, unique across nodes
+
+    @Column(nullable = true, length = 64)
+    @JsonIgnore
+    private String requestHash; // SHA-256 of the request body sent with idempotencyKey; replays must match it
+
     @PrePersist
     protected void onCreate() {
         if (orderDate == null) {
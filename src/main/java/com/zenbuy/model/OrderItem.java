@@ -5,14 +5,15 @@ import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
-@Table(name = "order_items")
+@Table(name = "order_items", indexes = @Index(name = "idx_order_items_stock_applied", columnList = "stock_applied"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class OrderItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_items_seq")
+    @SequenceGenerator(name = "order_items_seq", sequenceName = "order_items_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -36,5 +37,15 @@ public class OrderItem {
 
     @Column(nullable = true)
     private String imageUrl;
+
+    // False while the stock for a hot product is only reserved in memory and not yet written to the product row
+    @Column(nullable = false)
+    @JsonIgnore
+    private boolean stockApplied = true;
+
+    // Node whose hot-stock slice the quantity was reserved from; null when the product row was decremented
+    @Column(name = "stock_node")
+    @JsonIgnore
+    private Integer stockNode;
 }
 
@@ -1,22 +1,63 @@
 package com.zenbuy.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.SecondaryRow;
 
+// Price, stock and version live in the narrow product_inventory table (one row per product, same id), so
+// checkout's stock UPDATEs lock and rewrite a small row and listings filter and sort on a compact index;
+// the wide text columns stay in product. Dynamic update: an UPDATE only writes the columns that changed,
+// so edits never rewrite stock by accident and a stock change only touches product_inventory.
 @Entity
+@DynamicUpdate
+@Table(name = "product", indexes = {
+        @Index(name = "uk_product_name", columnList = "name", unique = true),
+        @Index(name = "idx_product_category", columnList = "category, id")
+})
+@SecondaryTable(name = Product.INVENTORY_TABLE,
+        pkJoinColumns = @PrimaryKeyJoinColumn(name = "product_id"),
+        indexes = @Index(name = "idx_inventory_price", columnList = "price, product_id"))
+@SecondaryRow(table = Product.INVENTORY_TABLE, optional = false)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
 
+    public static final String INVENTORY_TABLE = "product_inventory";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Unique: bulk import upserts by name
     private String name;
     private String description;
+
+    @Column(table = INVENTORY_TABLE, nullable = false)
     private double price;
+
     private String imageUrl;
     private String category;
+
+    @Column(name = "stock", table = INVENTORY_TABLE, nullable = false)
     private int stockQuantity;
+
+    // Flash-sale SKU: stock is reserved in memory by InventoryReservationEngine and written back in batches
+    @Column(nullable = false)
+    private boolean hot;
+
+    // Units of stock claimed into the hot-stock slices of checkout nodes and not yet written back as sold.
+    // Guarded stock UPDATEs only sell stock - held. Changed by SQL only, never written by the entity.
+    @JsonIgnore
+    @Column(name = "held", table = INVENTORY_TABLE, insertable = false, updatable = false,
+            columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int heldStock;
+
+    // Bumped by every entity update and by the stock UPDATE statements, so a stale write fails instead of
+    // overwriting a concurrent change
+    @Version
+    @Column(table = INVENTORY_TABLE, nullable = false)
+    private Long version;
 }
@@ -0,0 +1,16 @@
+package com.zenbuy.repository;
+
+import com.zenbuy.model.CacheVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface CacheVersionRepository extends JpaRepository<CacheVersion, String> {
+
+    @Modifying
+    @Query("UPDATE CacheVersion v SET v.version = v.version + 1, v.updatedAt = :now WHERE v.name = :name")
+    int increment(@Param("name") String name, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,24 @@
+package com.zenbuy.repository;
+
+import com.zenbuy.model.CatalogChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface CatalogChangeRepository extends JpaRepository<CatalogChange, Long> {
+
+    // Native so the assigned id is inserted without the select that save() would issue first
+    @Modifying
+    @Query(value = "INSERT INTO catalog_changes (version, product_ids, stock_only) VALUES (:version, :productIds, :stockOnly)",
+           nativeQuery = true)
+    int insert(@Param("version") long version, @Param("productIds") String productIds, @Param("stockOnly") boolean stockOnly);
+
+    List<CatalogChange> findByVersionBetween(long from, long to);
+
+    @Modifying
+    @Query("DELETE FROM CatalogChange c WHERE c.version <= :version")
+    int deleteUpTo(@Param("version") long version);
+}
@@ -2,16 +2,29 @@ package com.zenbuy.repository;
 
 import com.zenbuy.model.Coupon;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.List;
 
-public interface CouponRepository extends JpaRepository<Coupon, Long> {
+public interface CouponRepository extends JpaRepository<Coupon, Long>, CouponTokenPoolRepository {
     Optional<Coupon> findByCode(String code);
     List<Coupon> findByIsActiveTrue();
-    List<Coupon> findByIsActiveTrueAndValidFromLessThanEqualAndValidUntilGreaterThanEqual(
-        LocalDateTime now1, LocalDateTime now2
-    );
-}
 
+    // Switches off coupons whose validity window has passed; coupons extended in the meantime are left active
+    @Modifying
+    @Transactional
+    @Query("UPDATE Coupon c SET c.isActive = false WHERE c.id IN :ids AND c.isActive = true AND c.validUntil < :now")
+    int deactivateExpired(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+
+    // Claims one use of a coupon without a token pool: 1 if a use was left, 0 if it is used up (or pooled)
+    @Modifying
+    @Query(value = "UPDATE coupons SET used_count = COALESCE(used_count, 0) + 1 WHERE id = :id " +
+                   "AND (max_uses IS NULL OR COALESCE(used_count, 0) < max_uses) " +
+                   "AND NOT EXISTS (SELECT 1 FROM coupon_token_pool t WHERE t.coupon_id = :id)", nativeQuery = true)
+    int claimUse(@Param("id") Long id);
+}
@@ -0,0 +1,19 @@
+package com.zenbuy.repository;
+
+import java.util.List;
+
+public interface CouponTokenPoolRepository {
+
+    // Takes one token from the stripe; false if the stripe is empty or the coupon has no pool
+    boolean takeToken(Long couponId, int stripe);
+
+    // Splits the coupon's remaining uses over the given number of stripes, unless a pool already exists.
+    // Runs under the coupon's row lock; returns the number of stripes, or 0 for a missing or uncapped coupon.
+    int allocatePool(Long couponId, int stripes);
+
+    // Adds the tokens taken since the last roll-up to coupons.used_count and drops the pool if asked to.
+    // Returns the number of tokens rolled up.
+    int rollUp(Long couponId, boolean dropPool);
+
+    List<Long> findPooledCouponIds();
+}
@@ -0,0 +1,80 @@
+package com.zenbuy.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CouponTokenPoolRepositoryImpl implements CouponTokenPoolRepository {
+
+    private static final String TAKE_SQL =
+            "UPDATE coupon_token_pool SET remaining = remaining - 1 WHERE coupon_id = ? AND stripe = ? AND remaining > 0";
+    private static final String LOCK_COUPON_SQL = "SELECT max_uses, used_count FROM coupons WHERE id = ? FOR UPDATE";
+    // Locking reads see the latest committed pool even inside an older snapshot
+    private static final String LOCK_STRIPES_SQL =
+            "SELECT stripe, baseline, remaining FROM coupon_token_pool WHERE coupon_id = ? FOR UPDATE";
+    private static final String INSERT_SQL =
+            "INSERT INTO coupon_token_pool (coupon_id, stripe, baseline, remaining) VALUES (?, ?, ?, ?)";
+    private static final String ADD_USED_SQL = "UPDATE coupons SET used_count = COALESCE(used_count, 0) + ? WHERE id = ?";
+    private static final String RESET_BASELINE_SQL = "UPDATE coupon_token_pool SET baseline = remaining WHERE coupon_id = ?";
+    private static final String DELETE_SQL = "DELETE FROM coupon_token_pool WHERE coupon_id = ?";
+    private static final String POOLED_SQL = "SELECT DISTINCT coupon_id FROM coupon_token_pool";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CouponTokenPoolRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public boolean takeToken(Long couponId, int stripe) {
+        return jdbcTemplate.update(TAKE_SQL, couponId, stripe) > 0;
+    }
+
+    @Override
+    @Transactional
+    public int allocatePool(Long couponId, int stripes) {
+        List<Integer> remainingUses = jdbcTemplate.query(LOCK_COUPON_SQL, (resultSet, row) -> {
+            int maxUses = resultSet.getInt("max_uses");
+            return resultSet.wasNull() ? null : Math.max(0, maxUses - resultSet.getInt("used_count"));
+        }, couponId);
+        if (remainingUses.isEmpty() || remainingUses.get(0) == null) {
+            return 0;
+        }
+        int existing = jdbcTemplate.query(LOCK_STRIPES_SQL, (resultSet, row) -> row, couponId).size();
+        if (existing > 0) {
+            return existing;
+        }
+        int total = remainingUses.get(0);
+        List<Object[]> args = new ArrayList<>(stripes);
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int tokens = total / stripes + (stripe < total % stripes ? 1 : 0);
+            args.add(new Object[]{couponId, stripe, tokens, tokens});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+        return stripes;
+    }
+
+    @Override
+    @Transactional
+    public int rollUp(Long couponId, boolean dropPool) {
+        List<Integer> taken = jdbcTemplate.query(LOCK_STRIPES_SQL,
+                (resultSet, row) -> resultSet.getInt("baseline") - resultSet.getInt("remaining"), couponId);
+        int total = taken.stream().mapToInt(Integer::intValue).sum();
+        if (total > 0) {
+            jdbcTemplate.update(ADD_USED_SQL, total, couponId);
+        }
+        if (dropPool) {
+            jdbcTemplate.update(DELETE_SQL, couponId);
+        } else if (total > 0) {
+            jdbcTemplate.update(RESET_BASELINE_SQL, couponId);
+        }
+        return total;
+    }
+
+    @Override
+    public List<Long> findPooledCouponIds() {
+        return jdbcTemplate.queryForList(POOLED_SQL, Long.class);
+    }
+}
@@ -0,0 +1,46 @@
+package com.zenbuy.repository;
+
+import com.zenbuy.model.InventoryNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+// Lease times are compared on the database clock only, so clock skew between nodes does not matter
+public interface InventoryNodeRepository extends JpaRepository<InventoryNode, Integer> {
+
+    // Takes the id if this owner already holds it or its lease has expired; 0 if another live node holds it
+    // or there is no row yet
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE inventory_nodes SET owner = :owner, renewed_at = CURRENT_TIMESTAMP WHERE node_id = :nodeId " +
+                   "AND (owner = :owner OR renewed_at < TIMESTAMPADD(SECOND, -:leaseSeconds, CURRENT_TIMESTAMP))",
+           nativeQuery = true)
+    int takeOver(@Param("nodeId") int nodeId, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    // Fails with a duplicate key when another node inserted the id first
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO inventory_nodes (node_id, owner, renewed_at) VALUES (:nodeId, :owner, CURRENT_TIMESTAMP)",
+           nativeQuery = true)
+    int insert(@Param("nodeId") int nodeId, @Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE inventory_nodes SET renewed_at = CURRENT_TIMESTAMP WHERE node_id = :nodeId AND owner = :owner",
+           nativeQuery = true)
+    int renew(@Param("nodeId") int nodeId, @Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM inventory_nodes WHERE node_id = :nodeId AND owner = :owner", nativeQuery = true)
+    int release(@Param("nodeId") int nodeId, @Param("owner") String owner);
+
+    @Query(value = "SELECT node_id FROM inventory_nodes " +
+                   "WHERE renewed_at >= TIMESTAMPADD(SECOND, -:leaseSeconds, CURRENT_TIMESTAMP) ORDER BY node_id",
+           nativeQuery = true)
+    List<Integer> findLiveNodeIds(@Param("leaseSeconds") int leaseSeconds);
+}
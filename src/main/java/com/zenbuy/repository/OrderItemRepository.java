@@ -0,0 +1,34 @@
+package com.zenbuy.repository;
+
+import com.zenbuy.dto.OrderItemView;
+import com.zenbuy.model.OrderItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
+
+    @Query("SELECT new com.zenbuy.dto.OrderItemView(i.id, i.productName, i.price, i.quantity, i.imageUrl) " +
+           "FROM OrderItem i WHERE i.order.id = :orderId ORDER BY i.id")
+    List<OrderItemView> findViewsByOrderId(@Param("orderId") Long orderId);
+
+    @Query("SELECT i.id AS id, i.product.id AS productId, i.quantity AS quantity, i.stockNode AS stockNode " +
+           "FROM OrderItem i WHERE i.stockApplied = false ORDER BY i.id")
+    List<UnappliedStock> findUnappliedStock(Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE OrderItem i SET i.stockApplied = true WHERE i.id IN :ids AND i.stockApplied = false")
+    int markStockApplied(@Param("ids") Collection<Long> ids);
+
+    interface UnappliedStock {
+        Long getId();
+        Long getProductId();
+        int getQuantity();
+        Integer getStockNode();
+    }
+}
@@ -1,13 +1,17 @@
 package com.zenbuy.repository;
 
+import com.zenbuy.dto.OrderView;
 import com.zenbuy.model.Order;
 import com.zenbuy.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -15,5 +19,27 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.items WHERE o.user.id = :userId ORDER BY o.orderDate DESC")
     List<Order> findByUserIdOrderByOrderDateDesc(@Param("userId") Long userId);
+
+    // Keyset pages over (orderDate, id), newest first, backed by idx_orders_user_date_id
+    @Query("SELECT o FROM Order o WHERE o.user.id = :userId ORDER BY o.orderDate DESC, o.id DESC")
+    List<Order> findFirstPageByUserId(@Param("userId") Long userId, Limit limit);
+
+    @Query("SELECT o FROM Order o WHERE o.user.id = :userId " +
+           "AND (o.orderDate < :orderDate OR (o.orderDate = :orderDate AND o.id < :id)) " +
+           "ORDER BY o.orderDate DESC, o.id DESC")
+    List<Order> findPageByUserIdAfter(@Param("userId") Long userId, @Param("orderDate") LocalDateTime orderDate,
+                                      @Param("id") Long id, Limit limit);
+
+    Optional<Order> findByIdempotencyKey(String idempotencyKey);
+
+    String ORDER_VIEW = "SELECT new com.zenbuy.dto.OrderView(o.id, o.orderNumber, o.status, o.paymentMethod, " +
+            "o.paymentStatus, o.transactionId, o.couponCode, o.subtotal, o.shipping, o.discount, o.total, o.orderDate, " +
+            "o.shippingFlatNo, o.shippingLocality, o.shippingCity, o.shippingPincode) FROM Order o ";
+
+    @Query(ORDER_VIEW + "WHERE o.id = :id")
+    Optional<OrderView> findViewById(@Param("id") Long id);
+
+    @Query(ORDER_VIEW + "WHERE o.orderNumber = :orderNumber")
+    Optional<OrderView> findViewByOrderNumber(@Param("orderNumber") String orderNumber);
 }
 
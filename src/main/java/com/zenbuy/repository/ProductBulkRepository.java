@@ -0,0 +1,15 @@
+package com.zenbuy.repository;
+
+import com.zenbuy.model.Product;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface ProductBulkRepository {
+
+    // Inserts new products and updates existing ones, matched on the unique name, in one JDBC batch
+    void upsertBatch(List<Product> products);
+
+    // Reads every product in id order through a forward-only, streaming result set
+    void streamAll(Consumer<Product> consumer);
+}
@@ -0,0 +1,81 @@
+package com.zenbuy.repository;
+
+import com.zenbuy.model.Product;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class ProductBulkRepositoryImpl implements ProductBulkRepository {
+
+    // Two statements per row: the content row is upserted by name, then its inventory row by the resolved id.
+    // An existing row keeps at least the stock held in hot-stock slices, which checkout nodes may have sold.
+    private static final String UPSERT_SQL =
+            "INSERT INTO product (name, description, image_url, category, hot) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE description = VALUES(description), image_url = VALUES(image_url), " +
+            "category = VALUES(category), hot = VALUES(hot)";
+    private static final String UPSERT_INVENTORY_SQL =
+            "INSERT INTO product_inventory (product_id, price, stock, version) " +
+            "SELECT id, ?, ?, 0 FROM product WHERE name = ? " +
+            "ON DUPLICATE KEY UPDATE price = VALUES(price), stock = GREATEST(VALUES(stock), held), version = version + 1";
+    private static final String SELECT_ALL_SQL =
+            "SELECT p.id, p.name, p.description, i.price, p.image_url, p.category, i.stock, p.hot, i.version " +
+            "FROM product p JOIN product_inventory i ON i.product_id = p.id ORDER BY p.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Integer streamingFetchSize;
+
+    public ProductBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void upsertBatch(List<Product> products) {
+        List<Object[]> args = new ArrayList<>(products.size());
+        List<Object[]> inventoryArgs = new ArrayList<>(products.size());
+        for (Product product : products) {
+            args.add(new Object[]{product.getName(), product.getDescription(), product.getImageUrl(),
+                    product.getCategory(), product.isHot()});
+            inventoryArgs.add(new Object[]{product.getPrice(), product.getStockQuantity(), product.getName()});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+        jdbcTemplate.batchUpdate(UPSERT_INVENTORY_SQL, inventoryArgs);
+    }
+
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        int fetchSize = streamingFetchSize();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_ALL_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, resultSet -> {
+            Product product = new Product();
+            product.setId(resultSet.getLong("id"));
+            product.setName(resultSet.getString("name"));
+            product.setDescription(resultSet.getString("description"));
+            product.setPrice(resultSet.getDouble("price"));
+            product.setImageUrl(resultSet.getString("image_url"));
+            product.setCategory(resultSet.getString("category"));
+            product.setStockQuantity(resultSet.getInt("stock"));
+            product.setHot(resultSet.getBoolean("hot"));
+            product.setVersion(resultSet.getLong("version"));
+            consumer.accept(product);
+        });
+    }
+
+    // MySQL Connector/J only streams rows one at a time with Integer.MIN_VALUE; other drivers take a real size
+    private int streamingFetchSize() {
+        if (streamingFetchSize == null) {
+            String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            streamingFetchSize = "MySQL".equalsIgnoreCase(database) ? Integer.MIN_VALUE : 1000;
+        }
+        return streamingFetchSize;
+    }
+}
@@ -1,7 +1,53 @@
 package com.zenbuy.repository;
 
+import com.zenbuy.dto.ProductSummary;
 import com.zenbuy.model.Product;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+import java.util.Collection;
+import java.util.List;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductStockRepository, ProductBulkRepository {
+
+    List<Product> findByHotTrue();
+
+    List<Product> findByCategoryOrderByIdAsc(String category);
+
+    @Query("SELECT p.name FROM Product p WHERE p.name IN :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    // Full scans in id order, one chunk at a time
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Catalog listing: summaries only, every filter optional, backed by idx_product_category / idx_inventory_price
+    String PRODUCT_SUMMARY = "SELECT new com.zenbuy.dto.ProductSummary(p.id, p.name, p.price, p.imageUrl, " +
+            "p.category, p.stockQuantity, p.hot) FROM Product p ";
+
+    String LISTING_FILTER = "WHERE (:category IS NULL OR p.category = :category) " +
+            "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
+            "AND (:maxPrice IS NULL OR p.price <= :maxPrice) ";
+
+    @Query(PRODUCT_SUMMARY + LISTING_FILTER)
+    Slice<ProductSummary> findSummaries(@Param("category") String category, @Param("minPrice") Double minPrice,
+                                        @Param("maxPrice") Double maxPrice, Pageable pageable);
+
+    // Keyset page in id order, for deep scrolling without OFFSET
+    @Query(PRODUCT_SUMMARY + LISTING_FILTER + "AND p.id > :afterId ORDER BY p.id")
+    List<ProductSummary> findSummariesAfter(@Param("category") String category, @Param("minPrice") Double minPrice,
+                                            @Param("maxPrice") Double maxPrice, @Param("afterId") Long afterId,
+                                            Limit limit);
+
+    // Guarded decrement: returns 1 if the stock was reserved, 0 if the product is missing or short on stock.
+    // Units held in hot-stock slices are not for sale here. Native so only the narrow inventory row is
+    // touched (HQL would treat the two-table entity as a multi-table update).
+    @Modifying
+    @Query(value = "UPDATE product_inventory SET stock = stock - :quantity, version = version + 1 " +
+                   "WHERE product_id = :id AND stock - held >= :quantity", nativeQuery = true)
+    int decrementStock(@Param("id") Long id, @Param("quantity") int quantity);
 }
@@ -0,0 +1,46 @@
+package com.zenbuy.repository;
+
+import java.util.List;
+
+public interface ProductStockRepository {
+
+    // Guarded decrement of several products in one JDBC batch; result[i] is 1 if row i was reserved, 0 otherwise
+    int[] decrementStockBatch(List<Long> productIds, List<Integer> quantities);
+
+    // Unguarded decrement in one JDBC batch, for deltas that were already reserved elsewhere
+    void subtractStockBatch(List<Long> productIds, List<Integer> quantities);
+
+    // Warehouse sync in one JDBC batch: row i sets the stock to stocks[i] when it is not null, otherwise adds
+    // deltas[i]. result[i] is 1 if row i was applied, 0 if the product is missing or the stock would drop below
+    // the units held in hot-stock slices (and so below zero).
+    int[] applyStockBatch(List<Long> productIds, List<Integer> stocks, List<Integer> deltas);
+
+    // Deletes a product, its inventory row and its hot-stock slices; false if it did not exist
+    boolean deleteWithInventory(Long productId);
+
+    // Moves up to wanted units of unclaimed stock (stock - held) into the node's slice; returns the units moved
+    int claimSlice(Long productId, int nodeId, int wanted);
+
+    // {allotted, unapplied}: units in the node's slice and how many of them are sold but not yet flushed
+    int[] sliceState(Long productId, int nodeId);
+
+    // Gives the unsold part of a node's slice back to the product; returns the units released
+    int releaseSlice(Long productId, int nodeId);
+
+    // Gives units the node took out of its counter back to the product
+    void returnUnits(Long productId, int nodeId, int units);
+
+    // stock - held: what the row path can sell and slices can claim; null if the product is missing
+    Integer freeStock(Long productId);
+
+    // Writes back units sold from slices in one JDBC batch: stock and held of the product and the slice shrink
+    void applySliceSales(List<Long> productIds, List<Integer> nodeIds, List<Integer> quantities);
+
+    // {productId, nodeId} of slices whose node id has no live lease in inventory_nodes
+    List<Object[]> findOrphanedSlices(int leaseSeconds);
+
+    // releaseSlice for a slice found by findOrphanedSlices, unless its node id was leased again in the meantime
+    int reclaimSlice(Long productId, int nodeId, int leaseSeconds);
+
+    List<Long> findSliceProductIds(int nodeId);
+}
@@ -0,0 +1,214 @@
+package com.zenbuy.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProductStockRepositoryImpl implements ProductStockRepository {
+
+    // Units held in hot-stock slices belong to the node that claimed them and are not for sale here
+    private static final String DECREMENT_SQL =
+            "UPDATE product_inventory SET stock = stock - ?, version = version + 1 WHERE product_id = ? AND stock - held >= ?";
+    private static final String SUBTRACT_SQL =
+            "UPDATE product_inventory SET stock = stock - ?, version = version + 1 WHERE product_id = ?";
+    // Stock may not drop below the units held in hot-stock slices
+    private static final String APPLY_SQL =
+            "UPDATE product_inventory SET stock = COALESCE(?, stock) + ?, version = version + 1 " +
+            "WHERE product_id = ? AND COALESCE(?, stock) + ? >= held";
+    private static final String DELETE_SLICES_SQL = "DELETE FROM hot_stock_slices WHERE product_id = ?";
+    private static final String DELETE_INVENTORY_SQL = "DELETE FROM product_inventory WHERE product_id = ?";
+    private static final String DELETE_PRODUCT_SQL = "DELETE FROM product WHERE id = ?";
+
+    // Slice changes lock the inventory row first and the slice row second, like the flusher
+    private static final String LOCK_FREE_STOCK_SQL = "SELECT stock - held FROM product_inventory WHERE product_id = ? FOR UPDATE";
+    private static final String FREE_STOCK_SQL = "SELECT stock - held FROM product_inventory WHERE product_id = ?";
+    private static final String ADD_HELD_SQL = "UPDATE product_inventory SET held = held + ?, version = version + 1 WHERE product_id = ?";
+    private static final String LOCK_SLICE_SQL =
+            "SELECT allotted FROM hot_stock_slices WHERE product_id = ? AND node_id = ? FOR UPDATE";
+    private static final String ADD_ALLOTTED_SQL =
+            "UPDATE hot_stock_slices SET allotted = allotted + ? WHERE product_id = ? AND node_id = ?";
+    private static final String INSERT_SLICE_SQL =
+            "INSERT INTO hot_stock_slices (product_id, node_id, allotted) VALUES (?, ?, ?)";
+    private static final String DELETE_EMPTY_SLICE_SQL =
+            "DELETE FROM hot_stock_slices WHERE product_id = ? AND node_id = ? AND allotted = 0";
+    private static final String SLICE_UNAPPLIED_SQL =
+            "SELECT COALESCE(SUM(quantity), 0) FROM order_items WHERE product_id = ? AND stock_node = ? AND stock_applied = FALSE";
+    private static final String SLICE_ALLOTTED_SQL =
+            "SELECT allotted FROM hot_stock_slices WHERE product_id = ? AND node_id = ?";
+    private static final String SLICE_SALE_INVENTORY_SQL =
+            "UPDATE product_inventory SET stock = stock - ?, held = held - ?, version = version + 1 WHERE product_id = ?";
+    private static final String SLICE_SALE_SQL =
+            "UPDATE hot_stock_slices SET allotted = allotted - ? WHERE product_id = ? AND node_id = ?";
+    private static final String ORPHANED_SQL = "SELECT s.product_id, s.node_id FROM hot_stock_slices s " +
+            "LEFT JOIN inventory_nodes n ON n.node_id = s.node_id " +
+            "AND n.renewed_at >= TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) " +
+            "WHERE n.node_id IS NULL ORDER BY s.product_id";
+    // Locks the lease row so a node taking over the id waits until the slice is reclaimed, and reads it after
+    private static final String LOCK_LIVE_NODE_SQL = "SELECT node_id FROM inventory_nodes " +
+            "WHERE node_id = ? AND renewed_at >= TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) FOR UPDATE";
+    private static final String NODE_SLICES_SQL = "SELECT product_id FROM hot_stock_slices WHERE node_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProductStockRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int[] decrementStockBatch(List<Long> productIds, List<Integer> quantities) {
+        checkSameSize(productIds, quantities);
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            args.add(new Object[]{quantities.get(i), productIds.get(i), quantities.get(i)});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(DECREMENT_SQL, args);
+        // Only a real row count proves the guard passed; SUCCESS_NO_INFO is reported as a failure
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counts[i] > 0 ? 1 : 0;
+        }
+        return counts;
+    }
+
+    @Override
+    public void subtractStockBatch(List<Long> productIds, List<Integer> quantities) {
+        checkSameSize(productIds, quantities);
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            args.add(new Object[]{quantities.get(i), productIds.get(i)});
+        }
+        jdbcTemplate.batchUpdate(SUBTRACT_SQL, args);
+    }
+
+    @Override
+    public int[] applyStockBatch(List<Long> productIds, List<Integer> stocks, List<Integer> deltas) {
+        checkSameSize(productIds, stocks);
+        checkSameSize(productIds, deltas);
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            Integer stock = stocks.get(i);
+            int delta = stock != null || deltas.get(i) == null ? 0 : deltas.get(i);
+            args.add(new Object[]{stock, delta, productIds.get(i), stock, delta});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(APPLY_SQL, args);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counts[i] > 0 ? 1 : 0;
+        }
+        return counts;
+    }
+
+    // Hibernate 6.3 puts the version check of a secondary-table @Version on the primary table's DELETE,
+    // which fails, so products are deleted here instead of through the entity
+    @Override
+    @Transactional
+    public boolean deleteWithInventory(Long productId) {
+        jdbcTemplate.update(DELETE_SLICES_SQL, productId);
+        jdbcTemplate.update(DELETE_INVENTORY_SQL, productId);
+        return jdbcTemplate.update(DELETE_PRODUCT_SQL, productId) > 0;
+    }
+
+    @Override
+    @Transactional
+    public int claimSlice(Long productId, int nodeId, int wanted) {
+        List<Integer> free = jdbcTemplate.queryForList(LOCK_FREE_STOCK_SQL, Integer.class, productId);
+        int units = free.isEmpty() ? 0 : Math.max(0, Math.min(free.get(0), wanted));
+        if (units == 0) {
+            return 0;
+        }
+        jdbcTemplate.update(ADD_HELD_SQL, units, productId);
+        if (jdbcTemplate.update(ADD_ALLOTTED_SQL, units, productId, nodeId) == 0) {
+            jdbcTemplate.update(INSERT_SLICE_SQL, productId, nodeId, units);
+        }
+        return units;
+    }
+
+    @Override
+    public int[] sliceState(Long productId, int nodeId) {
+        List<Integer> allotted = jdbcTemplate.queryForList(SLICE_ALLOTTED_SQL, Integer.class, productId, nodeId);
+        int unapplied = jdbcTemplate.queryForObject(SLICE_UNAPPLIED_SQL, Integer.class, productId, nodeId);
+        return new int[]{allotted.isEmpty() ? 0 : allotted.get(0), unapplied};
+    }
+
+    // Sold but unflushed units stay in the slice until the flusher writes them back
+    @Override
+    @Transactional
+    public int releaseSlice(Long productId, int nodeId) {
+        jdbcTemplate.queryForList(LOCK_FREE_STOCK_SQL, Integer.class, productId);
+        List<Integer> allotted = jdbcTemplate.queryForList(LOCK_SLICE_SQL, Integer.class, productId, nodeId);
+        if (allotted.isEmpty()) {
+            return 0;
+        }
+        int unapplied = jdbcTemplate.queryForObject(SLICE_UNAPPLIED_SQL, Integer.class, productId, nodeId);
+        int units = Math.max(0, allotted.get(0) - unapplied);
+        giveBack(productId, nodeId, units);
+        return units;
+    }
+
+    // The units were taken out of the node's counter, so they are neither sold nor in flight
+    @Override
+    @Transactional
+    public void returnUnits(Long productId, int nodeId, int units) {
+        jdbcTemplate.queryForList(LOCK_FREE_STOCK_SQL, Integer.class, productId);
+        if (!jdbcTemplate.queryForList(LOCK_SLICE_SQL, Integer.class, productId, nodeId).isEmpty()) {
+            giveBack(productId, nodeId, units);
+        }
+    }
+
+    @Override
+    public Integer freeStock(Long productId) {
+        List<Integer> free = jdbcTemplate.queryForList(FREE_STOCK_SQL, Integer.class, productId);
+        return free.isEmpty() ? null : free.get(0);
+    }
+
+    // Caller holds the inventory and slice row locks
+    private void giveBack(Long productId, int nodeId, int units) {
+        if (units > 0) {
+            jdbcTemplate.update(ADD_HELD_SQL, -units, productId);
+            jdbcTemplate.update(SLICE_SALE_SQL, units, productId, nodeId);
+        }
+        jdbcTemplate.update(DELETE_EMPTY_SLICE_SQL, productId, nodeId);
+    }
+
+    @Override
+    public void applySliceSales(List<Long> productIds, List<Integer> nodeIds, List<Integer> quantities) {
+        checkSameSize(productIds, quantities);
+        if (nodeIds.size() != productIds.size()) {
+            throw new IllegalArgumentException("productIds and nodeIds must have the same size");
+        }
+        List<Object[]> inventoryArgs = new ArrayList<>(productIds.size());
+        List<Object[]> sliceArgs = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            inventoryArgs.add(new Object[]{quantities.get(i), quantities.get(i), productIds.get(i)});
+            sliceArgs.add(new Object[]{quantities.get(i), productIds.get(i), nodeIds.get(i)});
+        }
+        jdbcTemplate.batchUpdate(SLICE_SALE_INVENTORY_SQL, inventoryArgs);
+        jdbcTemplate.batchUpdate(SLICE_SALE_SQL, sliceArgs);
+    }
+
+    @Override
+    public List<Object[]> findOrphanedSlices(int leaseSeconds) {
+        return jdbcTemplate.query(ORPHANED_SQL, (resultSet, row) ->
+                new Object[]{resultSet.getLong("product_id"), resultSet.getInt("node_id")}, -leaseSeconds);
+    }
+
+    @Override
+    @Transactional
+    public int reclaimSlice(Long productId, int nodeId, int leaseSeconds) {
+        if (!jdbcTemplate.queryForList(LOCK_LIVE_NODE_SQL, Integer.class, nodeId, -leaseSeconds).isEmpty()) {
+            return 0;
+        }
+        return releaseSlice(productId, nodeId);
+    }
+
+    @Override
+    public List<Long> findSliceProductIds(int nodeId) {
+        return jdbcTemplate.queryForList(NODE_SLICES_SQL, Long.class, nodeId);
+    }
+
+    private static void checkSameSize(List<Long> productIds, List<Integer> quantities) {
+        if (productIds.size() != quantities.size()) {
+            throw new IllegalArgumentException("productIds and quantities must have the same size");
+        }
+    }
+}
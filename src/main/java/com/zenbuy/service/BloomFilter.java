@@ -0,0 +1,100 @@
+package com.zenbuy.service;
+
+import java.util.Collection;
+
+// Bloom filter over strings, sized for an expected false-positive probability. Each key sets k bits derived
+// from two 64-bit hashes (h1 + i * h2), so a lookup is one pass over the key and k bit tests. It answers
+// "definitely absent" or "maybe present" and never forgets a key; it is immutable once built, so a changed
+// key set (including deletes) means building a new filter.
+public final class BloomFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+    private static final long MIN_BITS = 4096;
+
+    private final long[] words;
+    private final long bits;
+    private final int hashes;
+    private final int keys;
+
+    private BloomFilter(long bits, int hashes, int keys) {
+        this.words = new long[(int) ((bits + 63) >>> 6)];
+        this.bits = words.length * 64L;
+        this.hashes = hashes;
+        this.keys = keys;
+    }
+
+    public static BloomFilter of(Collection<String> keys, double fpp) {
+        int n = Math.max(1, keys.size());
+        // m = -n ln p / (ln 2)^2 bits and k = -ln p / ln 2 hashes minimise the false-positive rate
+        // With m bits, h1 + i * h2 only has about m^2 / 2 distinct probe sequences, hence the floor for small sets
+        long bits = Math.max(MIN_BITS, (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        int hashes = Math.max(1, (int) Math.round(-Math.log(fpp) / Math.log(2)));
+        BloomFilter filter = new BloomFilter(bits, hashes, keys.size());
+        for (String key : keys) {
+            filter.put(key);
+        }
+        return filter;
+    }
+
+    public boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 + GOLDEN) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void put(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 + GOLDEN) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public long bitCount() {
+        return bits;
+    }
+
+    public int hashCount() {
+        return hashes;
+    }
+
+    public int keyCount() {
+        return keys;
+    }
+
+    // The chance that an absent key hits k set bits, from the share of bits actually set
+    public double estimatedFpp() {
+        long set = 0;
+        for (long word : words) {
+            set += Long.bitCount(word);
+        }
+        return Math.pow((double) set / bits, hashes);
+    }
+
+    // FNV-1a over the UTF-16 chars, finished with the MurmurHash3 mixer to spread the low bits
+    private static long hash(String key) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,116 @@
+package com.zenbuy.service;
+
+import com.zenbuy.model.CacheInvalidation;
+import com.zenbuy.repository.CacheInvalidationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Keeps local caches coherent across nodes without a broker. publish() evicts the key locally once the
+// current transaction commits and writes a row to cache_invalidations in that same transaction; every
+// node polls the table for rows past the highest id it has seen and evicts each key once per poll. The id
+// comes from the database, so node clocks do not matter. Ids are handed out at insert but become visible
+// at commit, so an id skipped by a poll may still show up: skipped ids are looked up again until they
+// appear or gap-timeout passes (a rolled-back insert leaves a gap that never fills).
+@Service
+@Profile("dev")
+public class CacheInvalidationService {
+
+    private final CacheInvalidationRepository repository;
+    private final long gapTimeoutNanos;
+    private final Duration retention;
+    private final Map<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+    // Highest id seen, -1 until the first poll starts from the current end of the table
+    private long lastId = -1;
+    // Skipped ids with the System.nanoTime() at which they were first missed
+    private final Map<Long, Long> gaps = new HashMap<>();
+
+    public CacheInvalidationService(CacheInvalidationRepository repository,
+                                    @Value("${zenbuy.cache.invalidation.gap-timeout-seconds:60}") long gapTimeoutSeconds,
+                                    @Value("${zenbuy.cache.invalidation.retention-minutes:60}") long retentionMinutes) {
+        this.repository = repository;
+        this.gapTimeoutNanos = TimeUnit.SECONDS.toNanos(gapTimeoutSeconds);
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    public void register(String cacheName, Consumer<String> handler) {
+        handlers.put(cacheName, handler);
+    }
+
+    public void publish(String cacheName, String key) {
+        repository.save(new CacheInvalidation(null, cacheName, key, LocalDateTime.now()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictLocally(cacheName, key);
+                }
+            });
+        } else {
+            evictLocally(cacheName, key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.cache.invalidation.poll-interval-ms:2000}")
+    public synchronized void poll() {
+        try {
+            if (lastId < 0) {
+                lastId = repository.findMaxId();
+                return;
+            }
+            List<CacheInvalidation> rows = new ArrayList<>();
+            long now = System.nanoTime();
+            if (!gaps.isEmpty()) {
+                gaps.values().removeIf(missedAt -> now - missedAt > gapTimeoutNanos);
+                rows.addAll(repository.findByIdIn(new ArrayList<>(gaps.keySet())));
+            }
+            for (CacheInvalidation invalidation : repository.findByIdGreaterThanOrderByIdAsc(lastId)) {
+                for (long skipped = lastId + 1; skipped < invalidation.getId(); skipped++) {
+                    gaps.put(skipped, now);
+                }
+                lastId = invalidation.getId();
+                rows.add(invalidation);
+            }
+            // A key named by several rows is evicted once
+            Set<Map.Entry<String, String>> keys = new LinkedHashSet<>();
+            for (CacheInvalidation invalidation : rows) {
+                gaps.remove(invalidation.getId());
+                keys.add(Map.entry(invalidation.getCacheName(), invalidation.getCacheKey()));
+            }
+            keys.forEach(key -> evictLocally(key.getKey(), key.getValue()));
+        } catch (RuntimeException e) {
+            System.err.println("Cache invalidation poll failed: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.cache.invalidation.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        try {
+            repository.deleteOlderThan(LocalDateTime.now().minus(retention));
+        } catch (RuntimeException e) {
+            System.err.println("Cache invalidation cleanup failed: " + e.getMessage());
+        }
+    }
+
+    private void evictLocally(String cacheName, String key) {
+        Consumer<String> handler = handlers.get(cacheName);
+        if (handler != null) {
+            handler.accept(key);
+        }
+    }
+}
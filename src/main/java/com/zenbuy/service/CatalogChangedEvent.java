@@ -0,0 +1,31 @@
+package com.zenbuy.service;
+
+import java.util.Set;
+
+// Published when products change. LOCAL events come from this node and are delivered after commit;
+// REMOTE events mean another node changed the catalog (its caches are already updated by
+// ProductCatalogCache). An empty productIds set means "any product".
+public record CatalogChangedEvent(Set<Long> productIds, boolean stockOnly, Origin origin) {
+
+    public enum Origin { LOCAL, REMOTE }
+
+    public static CatalogChangedEvent productsChanged(Long productId) {
+        return new CatalogChangedEvent(Set.of(productId), false, Origin.LOCAL);
+    }
+
+    public static CatalogChangedEvent stockChanged(Set<Long> productIds) {
+        return new CatalogChangedEvent(Set.copyOf(productIds), true, Origin.LOCAL);
+    }
+
+    public static CatalogChangedEvent allChanged() {
+        return new CatalogChangedEvent(Set.of(), false, Origin.LOCAL);
+    }
+
+    public static CatalogChangedEvent remote() {
+        return new CatalogChangedEvent(Set.of(), false, Origin.REMOTE);
+    }
+
+    public static CatalogChangedEvent remote(Set<Long> productIds, boolean stockOnly) {
+        return new CatalogChangedEvent(Set.copyOf(productIds), stockOnly, Origin.REMOTE);
+    }
+}
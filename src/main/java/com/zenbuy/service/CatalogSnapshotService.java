@@ -0,0 +1,112 @@
+package com.zenbuy.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zenbuy.model.Product;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+// Optional snapshot mode for the public catalog. The full product list and each category slice are rendered
+// to JSON once per listing ETag and kept as identity and gzip byte arrays, which the controller writes out
+// as they are: no per-request serialization or compression. One request rebuilds a stale snapshot while the
+// others keep serving the previous one under its own (older) ETag.
+@Service
+@Profile("dev")
+@ConditionalOnProperty(name = "zenbuy.catalog.snapshot.enabled", havingValue = "true")
+public class CatalogSnapshotService {
+
+    public record Body(byte[] identity, byte[] gzip) {
+    }
+
+    // categories is keyed by categoryKey()
+    public record Snapshot(String etag, Body all, Map<String, Body> categories) {
+
+        public Body category(String category) {
+            return categories.get(categoryKey(category));
+        }
+    }
+
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    public CatalogSnapshotService(ProductService productService, ObjectMapper objectMapper) {
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+    }
+
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && current.etag().equals(productService.getListingETag())) {
+            return current;
+        }
+        if (current != null && !buildLock.tryLock()) {
+            return current;
+        }
+        if (current == null) {
+            buildLock.lock();
+        }
+        try {
+            String etag = productService.getListingETag();
+            current = snapshot;
+            if (current == null || !current.etag().equals(etag)) {
+                current = build(etag);
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private Snapshot build(String etag) {
+        long started = System.currentTimeMillis();
+        List<Product> products = productService.getAllProducts();
+        Map<String, List<Product>> byCategory = new LinkedHashMap<>();
+        for (Product product : products) {
+            if (product.getCategory() != null) {
+                byCategory.computeIfAbsent(categoryKey(product.getCategory()), category -> new ArrayList<>()).add(product);
+            }
+        }
+        Map<String, Body> categories = new HashMap<>();
+        byCategory.forEach((category, slice) -> categories.put(category, render(slice)));
+        Snapshot built = new Snapshot(etag, render(products), Map.copyOf(categories));
+        System.out.println("Catalog snapshot rebuilt: " + products.size() + " products, " + categories.size()
+                + " categories in " + (System.currentTimeMillis() - started) + " ms");
+        return built;
+    }
+
+    // Matches categories the way the database query does: the column collation ignores case and trailing spaces
+    static String categoryKey(String category) {
+        return category.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+
+    private Body render(List<Product> products) {
+        try {
+            byte[] identity = objectMapper.writeValueAsBytes(products);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(identity.length / 4, 64));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(identity);
+            }
+            return new Body(identity, compressed.toByteArray());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to render catalog snapshot: " + e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
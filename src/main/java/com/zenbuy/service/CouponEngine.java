@@ -0,0 +1,468 @@
+package com.zenbuy.service;
+
+import com.zenbuy.model.Coupon;
+import com.zenbuy.repository.CouponRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Coupons held in memory by normalized code, so validating a code costs a hash lookup and a few compares
+// instead of a query. Each coupon's active flag, validity window, usage cap and minimum purchase are
+// compiled once into a list of rules that only contains the checks the coupon actually has. Admin changes
+// go through invalidate(), which reloads the coupon here and, via CacheInvalidationService, on every other
+// node; a periodic full reload picks up anything else. The usage count seen here is a snapshot: only
+// redemption reads the authoritative count from the database.
+//
+// The engine also keeps the set of currently active coupons for GET /api/coupons/active. Each coupon's
+// validFrom and validUntil within the next two reload intervals are scheduled on a hashed timing wheel, which
+// moves the coupon in and out of the set when they pass; later boundaries are scheduled by a later reload.
+// Coupons that expire are switched off in the database in batches, so old rows can be archived.
+//
+// Codes are checked against a Bloom filter of every known code first, so the random codes bots guess are
+// turned away without touching the coupon map. The filter is rebuilt whenever the map is replaced.
+//
+// The active set is also published as parallel primitive arrays, so ranking every active coupon for a
+// cart (POST /api/coupons/best) is a single pass over contiguous memory without per-coupon lookups.
+@Service
+@Profile("dev")
+public class CouponEngine {
+
+    static final String CACHE_NAME = "coupons";
+
+    public record Validation(Coupon coupon, String error) {
+
+        public boolean valid() {
+            return error == null;
+        }
+    }
+
+    public record RankedCoupon(Coupon coupon, double discount) {
+    }
+
+    // One check of a compiled coupon: null when it passes, otherwise the message shown to the customer
+    @FunctionalInterface
+    interface Rule {
+        String check(LocalDateTime now, Double orderAmount);
+    }
+
+    static final class CompiledCoupon {
+        final Coupon coupon;
+        final Rule[] rules;
+        // Pending validFrom/validUntil timeouts; only touched under the engine's lock
+        final List<HashedTimingWheel.Timeout> boundaries = new ArrayList<>(2);
+
+        CompiledCoupon(Coupon coupon, Rule[] rules) {
+            this.coupon = coupon;
+            this.rules = rules;
+        }
+
+        String check(LocalDateTime now, Double orderAmount) {
+            for (Rule rule : rules) {
+                String error = rule.check(now, orderAmount);
+                if (error != null) {
+                    return error;
+                }
+            }
+            return null;
+        }
+    }
+
+    // The active set as parallel arrays in id order. Times are local date-times in microseconds, read as UTC
+    // only so they can be compared as longs. Remaining uses come from the loaded usedCount, which lags pooled
+    // redemptions by up to a roll-up interval; checkout still claims the use against the database.
+    private static final class ActiveSet {
+        final CompiledCoupon[] compiled;
+        final long[] validFrom;
+        final long[] validUntil;
+        final double[] minPurchase;
+        final boolean[] percentage;
+        final double[] value;
+        final int[] remainingUses;
+
+        ActiveSet(CompiledCoupon[] compiled) {
+            int n = compiled.length;
+            this.compiled = compiled;
+            this.validFrom = new long[n];
+            this.validUntil = new long[n];
+            this.minPurchase = new double[n];
+            this.percentage = new boolean[n];
+            this.value = new double[n];
+            this.remainingUses = new int[n];
+            for (int i = 0; i < n; i++) {
+                Coupon coupon = compiled[i].coupon;
+                validFrom[i] = coupon.getValidFrom() != null ? micros(coupon.getValidFrom()) : Long.MIN_VALUE;
+                validUntil[i] = coupon.getValidUntil() != null ? micros(coupon.getValidUntil()) : Long.MAX_VALUE;
+                minPurchase[i] = coupon.getMinPurchaseAmount() != null ? coupon.getMinPurchaseAmount() : Double.NEGATIVE_INFINITY;
+                percentage[i] = "PERCENTAGE".equalsIgnoreCase(coupon.getDiscountType());
+                value[i] = coupon.getDiscountValue() != null ? coupon.getDiscountValue() : 0;
+                int used = coupon.getUsedCount() != null ? coupon.getUsedCount() : 0;
+                remainingUses[i] = coupon.getMaxUses() != null ? Math.max(0, coupon.getMaxUses() - used) : Integer.MAX_VALUE;
+            }
+        }
+
+        boolean inWindow(int i, long now) {
+            return now >= validFrom[i] && now <= validUntil[i];
+        }
+    }
+
+    private static final int DEACTIVATE_BATCH_SIZE = 500;
+    // Ranking packs a discount of up to about 5.5 billion in cents and an active-set index below 2^24 into a long
+    private static final long MAX_CENTS = (1L << 39) - 1;
+
+    private final CouponRepository couponRepository;
+    private final CacheInvalidationService invalidationService;
+    private final HashedTimingWheel wheel;
+    private final Duration tick;
+    private final Duration horizon;
+    private final double filterFpp;
+
+    // Replaced as a whole on full reloads; single coupons are swapped in under the engine's lock
+    private volatile Map<String, CompiledCoupon> byCode = Map.of();
+    private volatile boolean loaded;
+    // Published before byCode, so it never lacks a code the map has
+    private volatile BloomFilter codeFilter = BloomFilter.of(List.of(), 0.01);
+    private final LongAdder filterRejected = new LongAdder();
+    private final LongAdder filterFalsePositives = new LongAdder();
+    // Coupons inside their validity window, by id; changed under the engine's lock and published as activeSet
+    private final Map<Long, CompiledCoupon> activeById = new TreeMap<>();
+    private volatile ActiveSet activeSet = new ActiveSet(new CompiledCoupon[0]);
+    // Ids of expired coupons still marked active in the database
+    private final Queue<Long> expired = new ConcurrentLinkedQueue<>();
+
+    public CouponEngine(CouponRepository couponRepository,
+                        CacheInvalidationService invalidationService,
+                        @Value("${zenbuy.coupons.reload-interval-ms:300000}") long reloadIntervalMs,
+                        @Value("${zenbuy.coupons.activation.tick-ms:100}") long tickMs,
+                        @Value("${zenbuy.coupons.activation.wheel-size:512}") int wheelSize,
+                        @Value("${zenbuy.coupons.filter.fpp:0.01}") double filterFpp) {
+        this.couponRepository = couponRepository;
+        this.invalidationService = invalidationService;
+        this.tick = Duration.ofMillis(Math.max(1, tickMs));
+        this.horizon = Duration.ofMillis(reloadIntervalMs * 2);
+        this.wheel = new HashedTimingWheel("coupon-activation", tick, wheelSize);
+        this.filterFpp = filterFpp;
+        invalidationService.register(CACHE_NAME, key -> reload(Long.valueOf(key)));
+    }
+
+    @PostConstruct
+    public void start() {
+        wheel.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        wheel.stop();
+    }
+
+    public static String normalize(String code) {
+        return code == null ? null : code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    public Validation validate(String code, Double orderAmount) {
+        if (!loaded) {
+            reloadAll();
+        }
+        String key = normalize(code);
+        if (key == null || !codeFilter.mightContain(key)) {
+            filterRejected.increment();
+            return new Validation(null, "Invalid coupon code");
+        }
+        CompiledCoupon compiled = byCode.get(key);
+        if (compiled == null) {
+            filterFalsePositives.increment();
+            return new Validation(null, "Invalid coupon code");
+        }
+        return new Validation(compiled.coupon, compiled.check(LocalDateTime.now(), orderAmount));
+    }
+
+    // Coupons inside their validity window, ordered by id. The set is adjusted one tick ahead of validFrom
+    // and one tick after validUntil; the window check here makes the boundaries exact.
+    public List<Coupon> activeCoupons() {
+        if (!loaded) {
+            reloadAll();
+        }
+        ActiveSet set = activeSet;
+        long now = micros(LocalDateTime.now());
+        List<Coupon> coupons = new ArrayList<>();
+        for (int i = 0; i < set.compiled.length; i++) {
+            if (set.inWindow(i, now)) {
+                coupons.add(set.compiled[i].coupon);
+            }
+        }
+        return coupons;
+    }
+
+    // The limit active coupons with the largest discount on an order of this amount, best first (ties by id)
+    public List<RankedCoupon> rank(double orderAmount, int limit) {
+        if (!loaded) {
+            reloadAll();
+        }
+        ActiveSet set = activeSet;
+        long now = micros(LocalDateTime.now());
+        // Each hit is packed into one long, (MAX_CENTS - discount in cents) << 24 | index, so smaller is better
+        // and equal discounts fall back to id order. The best hits are kept in a max-heap of at most limit keys,
+        // whose root is the worst one kept, so a pass costs O(n log limit) and allocates nothing per coupon.
+        long[] heap = new long[Math.max(0, Math.min(limit, set.compiled.length))];
+        int size = 0;
+        for (int i = 0; i < set.compiled.length && heap.length > 0; i++) {
+            if (set.inWindow(i, now) && set.remainingUses[i] > 0 && orderAmount >= set.minPurchase[i]) {
+                long cents = Math.round(discount(set.percentage[i], set.value[i], orderAmount) * 100);
+                if (cents <= 0) {
+                    continue;
+                }
+                long key = (MAX_CENTS - Math.min(cents, MAX_CENTS)) << 24 | i;
+                if (size < heap.length) {
+                    siftUp(heap, size++, key);
+                } else if (key < heap[0]) {
+                    siftDown(heap, size, key);
+                }
+            }
+        }
+        Arrays.sort(heap, 0, size);
+        List<RankedCoupon> ranked = new ArrayList<>(size);
+        for (int h = 0; h < size; h++) {
+            ranked.add(new RankedCoupon(set.compiled[(int) (heap[h] & 0xFFFFFF)].coupon,
+                    (MAX_CENTS - (heap[h] >>> 24)) / 100.0));
+        }
+        return ranked;
+    }
+
+    private static void siftUp(long[] heap, int index, long key) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] >= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    // Replaces the root with key and restores the max-heap order
+    private static void siftDown(long[] heap, int size, long key) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[child] <= key) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+
+    // The discount a coupon gives on an order: a percentage of it or a flat amount, never more than the order
+    static double discount(boolean percentage, double value, double orderAmount) {
+        double discount = percentage ? orderAmount * value / 100 : value;
+        discount = Math.max(0, Math.min(discount, orderAmount));
+        return Math.round(discount * 100) / 100.0;
+    }
+
+    private static long micros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1000;
+    }
+
+    // Reloads the coupon after the current transaction commits, here and on every other node
+    public void invalidate(Long couponId) {
+        invalidationService.publish(CACHE_NAME, String.valueOf(couponId));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${zenbuy.coupons.reload-interval-ms:300000}", initialDelayString = "${zenbuy.coupons.reload-interval-ms:300000}")
+    public void scheduledReload() {
+        try {
+            reloadAll();
+        } catch (RuntimeException e) {
+            System.err.println("Coupon reload failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized void reloadAll() {
+        Map<String, CompiledCoupon> coupons = new HashMap<>();
+        for (Coupon coupon : couponRepository.findAll()) {
+            coupons.put(normalize(coupon.getCode()), compile(coupon));
+        }
+        for (CompiledCoupon compiled : byCode.values()) {
+            cancelBoundaries(compiled);
+        }
+        activeById.clear();
+        LocalDateTime now = LocalDateTime.now();
+        for (CompiledCoupon compiled : coupons.values()) {
+            track(compiled, now);
+        }
+        codeFilter = BloomFilter.of(coupons.keySet(), filterFpp);
+        byCode = coupons;
+        publishActive();
+        loaded = true;
+    }
+
+    private synchronized void reload(Long couponId) {
+        Map<String, CompiledCoupon> coupons = new HashMap<>(byCode);
+        coupons.values().removeIf(compiled -> {
+            if (!couponId.equals(compiled.coupon.getId())) {
+                return false;
+            }
+            cancelBoundaries(compiled);
+            return true;
+        });
+        activeById.remove(couponId);
+        couponRepository.findById(couponId).ifPresent(coupon -> {
+            CompiledCoupon compiled = compile(coupon);
+            coupons.put(normalize(coupon.getCode()), compiled);
+            track(compiled, LocalDateTime.now());
+        });
+        codeFilter = BloomFilter.of(coupons.keySet(), filterFpp);
+        byCode = coupons;
+        publishActive();
+    }
+
+    // Runs on the wheel thread when one of the coupon's boundaries has passed
+    private synchronized void onBoundary(CompiledCoupon compiled) {
+        if (byCode.get(normalize(compiled.coupon.getCode())) != compiled) {
+            return; // replaced by a reload since it was scheduled
+        }
+        cancelBoundaries(compiled);
+        activeById.remove(compiled.coupon.getId());
+        track(compiled, LocalDateTime.now());
+        publishActive();
+    }
+
+    // Puts the coupon in the active set if it belongs there now and schedules its upcoming boundaries
+    private void track(CompiledCoupon compiled, LocalDateTime now) {
+        Coupon coupon = compiled.coupon;
+        if (!Boolean.TRUE.equals(coupon.getIsActive())) {
+            return;
+        }
+        LocalDateTime validFrom = coupon.getValidFrom();
+        LocalDateTime validUntil = coupon.getValidUntil();
+        if (validUntil != null && now.isAfter(validUntil)) {
+            expired.add(coupon.getId());
+            return;
+        }
+        if (validFrom != null && now.plus(tick).isBefore(validFrom)) {
+            schedule(compiled, validFrom.minus(tick), now);
+        } else {
+            activeById.put(coupon.getId(), compiled);
+        }
+        if (validUntil != null) {
+            schedule(compiled, validUntil.plus(tick), now);
+        }
+    }
+
+    private void schedule(CompiledCoupon compiled, LocalDateTime at, LocalDateTime now) {
+        Duration delay = Duration.between(now, at);
+        if (delay.compareTo(horizon) <= 0) {
+            compiled.boundaries.add(wheel.schedule(() -> onBoundary(compiled), delay));
+        }
+    }
+
+    private static void cancelBoundaries(CompiledCoupon compiled) {
+        compiled.boundaries.forEach(HashedTimingWheel.Timeout::cancel);
+        compiled.boundaries.clear();
+    }
+
+    private void publishActive() {
+        activeSet = new ActiveSet(activeById.values().toArray(new CompiledCoupon[0]));
+    }
+
+    public Map<String, Object> stats() {
+        BloomFilter filter = codeFilter;
+        long rejected = filterRejected.sum();
+        long falsePositives = filterFalsePositives.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("coupons", byCode.size());
+        result.put("active", activeSet.compiled.length);
+        result.put("filterBits", filter.bitCount());
+        result.put("filterHashes", filter.hashCount());
+        result.put("filterTargetFpp", filterFpp);
+        result.put("filterEstimatedFpp", filter.estimatedFpp());
+        result.put("filterRejected", rejected);
+        result.put("filterFalsePositives", falsePositives);
+        // Share of unknown codes the filter let through to the map
+        result.put("filterObservedFpp", rejected + falsePositives == 0 ? 0.0 : (double) falsePositives / (rejected + falsePositives));
+        return result;
+    }
+
+    // Switches expired coupons off in the database, a batch of ids per statement. The compiled coupons are
+    // left alone: an inactive coupon past its validUntil still reports that it has expired.
+    @Scheduled(fixedDelayString = "${zenbuy.coupons.activation.deactivate-interval-ms:1000}")
+    public void deactivateExpired() {
+        try {
+            List<Long> ids = new ArrayList<>(DEACTIVATE_BATCH_SIZE);
+            Long id;
+            int deactivated = 0;
+            while ((id = expired.poll()) != null) {
+                ids.add(id);
+                if (ids.size() == DEACTIVATE_BATCH_SIZE || expired.isEmpty()) {
+                    deactivated += couponRepository.deactivateExpired(ids, LocalDateTime.now());
+                    ids.clear();
+                }
+            }
+            if (deactivated > 0) {
+                System.out.println("Deactivated expired coupons: " + deactivated);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Coupon deactivation failed: " + e.getMessage());
+        }
+    }
+
+    static CompiledCoupon compile(Coupon coupon) {
+        List<Rule> rules = new ArrayList<>(4);
+        if (!Boolean.TRUE.equals(coupon.getIsActive())) {
+            boolean expired = coupon.getValidUntil() != null && LocalDateTime.now().isAfter(coupon.getValidUntil());
+            String message = expired ? "This coupon has expired" : "This coupon is no longer active";
+            rules.add((now, orderAmount) -> message);
+            return new CompiledCoupon(coupon, rules.toArray(new Rule[0]));
+        }
+        // Valid if validFrom <= now <= validUntil (inclusive)
+        LocalDateTime validFrom = coupon.getValidFrom();
+        if (validFrom != null) {
+            rules.add((now, orderAmount) -> now.isBefore(validFrom) ? "This coupon is not yet valid" : null);
+        }
+        LocalDateTime validUntil = coupon.getValidUntil();
+        if (validUntil != null) {
+            rules.add((now, orderAmount) -> now.isAfter(validUntil) ? "This coupon has expired" : null);
+        }
+        Integer maxUses = coupon.getMaxUses();
+        if (maxUses != null) {
+            int usedCount = coupon.getUsedCount() != null ? coupon.getUsedCount() : 0;
+            if (usedCount >= maxUses) {
+                rules.add((now, orderAmount) -> "This coupon has reached its usage limit");
+            }
+        }
+        Double minPurchase = coupon.getMinPurchaseAmount();
+        if (minPurchase != null) {
+            String message = "Minimum purchase amount of ₹" + minPurchase + " required";
+            rules.add((now, orderAmount) -> orderAmount != null && orderAmount < minPurchase ? message : null);
+        }
+        return new CompiledCoupon(coupon, rules.toArray(new Rule[0]));
+    }
+}
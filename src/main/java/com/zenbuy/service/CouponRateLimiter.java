@@ -0,0 +1,65 @@
+package com.zenbuy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-client-IP token bucket for GET /api/coupons/validate/{code}. Each bucket is a single AtomicLong holding
+// the time at which it will be full again (the GCRA form of a token bucket): a request costs one emission
+// interval, is allowed while that time stays within burst intervals of now, and is claimed with one CAS,
+// so callers never block each other. Idle buckets are full and are simply evicted.
+@Service
+@Profile("dev")
+public class CouponRateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final Cache<String, AtomicLong> buckets;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    public CouponRateLimiter(@Value("${zenbuy.coupons.validate.rate-per-second:5}") double ratePerSecond,
+                             @Value("${zenbuy.coupons.validate.burst:20}") int burst,
+                             @Value("${zenbuy.coupons.validate.max-clients:100000}") long maxClients) {
+        this.intervalNanos = (long) (1_000_000_000L / Math.max(0.001, ratePerSecond));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(burstNanos).plusSeconds(1))
+                .build();
+    }
+
+    // 0 when the request may proceed, otherwise the number of seconds to wait before retrying
+    public long tryAcquire(String clientIp) {
+        AtomicLong bucket = buckets.get(clientIp == null ? "" : clientIp, ip -> new AtomicLong(System.nanoTime()));
+        while (true) {
+            long now = System.nanoTime();
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                limited.increment();
+                return Duration.ofNanos(next - now - burstNanos).toSeconds() + 1;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clients", buckets.estimatedSize());
+        result.put("allowed", allowed.sum());
+        result.put("limited", limited.sum());
+        return result;
+    }
+}
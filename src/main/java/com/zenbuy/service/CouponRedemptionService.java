@@ -0,0 +1,111 @@
+package com.zenbuy.service;
+
+import com.zenbuy.model.Coupon;
+import com.zenbuy.repository.CouponRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Claims coupon uses inside the checkout transaction and computes the discount on the server. The coupon's
+// rules come from CouponEngine's in-memory copy; only the usage cap is checked against the database.
+// Ordinary coupons claim a use with one conditional UPDATE on the coupon row. Coupons with at least
+// poolMinUses uses get a token pool instead: their remaining uses are split over poolStripes rows and each
+// checkout takes a token from a random stripe, so concurrent checkouts on one code lock different rows.
+// Either way the claim is rolled back with the order, and uses can never exceed maxUses. Tokens taken from
+// a pool are rolled up into coupons.used_count periodically and whenever an admin changes the coupon.
+@Service
+@Profile("dev")
+public class CouponRedemptionService {
+
+    public record Redemption(String code, double discount) {
+    }
+
+    private final CouponRepository couponRepository;
+    private final CouponEngine couponEngine;
+    private final int poolMinUses;
+    private final int poolStripes;
+
+    // Stripe count per pooled coupon, so a redemption does not have to look the pool up
+    private final Map<Long, Integer> stripeCounts = new ConcurrentHashMap<>();
+
+    public CouponRedemptionService(CouponRepository couponRepository, CouponEngine couponEngine,
+                                   @Value("${zenbuy.coupons.pool.min-uses:1000}") int poolMinUses,
+                                   @Value("${zenbuy.coupons.pool.stripes:16}") int poolStripes) {
+        this.couponRepository = couponRepository;
+        this.couponEngine = couponEngine;
+        this.poolMinUses = poolMinUses;
+        this.poolStripes = Math.max(1, poolStripes);
+    }
+
+    // Must run inside the checkout transaction so the use is given back if the order rolls back
+    public Redemption redeem(String code, double orderAmount) {
+        CouponEngine.Validation validation = couponEngine.validate(code, orderAmount);
+        if (!validation.valid()) {
+            throw new RuntimeException(validation.error());
+        }
+        Coupon coupon = validation.coupon();
+        boolean pooled = coupon.getMaxUses() != null && coupon.getMaxUses() >= poolMinUses;
+        boolean claimed = pooled ? takeToken(coupon.getId()) : couponRepository.claimUse(coupon.getId()) == 1;
+        if (!claimed) {
+            throw new RuntimeException("This coupon has reached its usage limit");
+        }
+        return new Redemption(coupon.getCode(), discount(coupon, orderAmount));
+    }
+
+    static double discount(Coupon coupon, double orderAmount) {
+        double value = coupon.getDiscountValue() != null ? coupon.getDiscountValue() : 0;
+        return CouponEngine.discount("PERCENTAGE".equalsIgnoreCase(coupon.getDiscountType()), value, orderAmount);
+    }
+
+    // Stripes are tried from a random one onwards. Trying an empty stripe can leave it locked until commit,
+    // so near exhaustion two checkouts may deadlock; checkout retries those (OrderService.placeOrder).
+    private boolean takeToken(Long couponId) {
+        Integer stripes = stripeCounts.get(couponId);
+        if (stripes == null) {
+            stripes = couponRepository.allocatePool(couponId, poolStripes);
+            if (stripes == 0) {
+                return false;
+            }
+            stripeCounts.put(couponId, stripes);
+        }
+        if (takeFromAnyStripe(couponId, stripes)) {
+            return true;
+        }
+        // Used up, or the pool was rolled up after an admin change and has to be allocated again
+        stripeCounts.remove(couponId);
+        stripes = couponRepository.allocatePool(couponId, poolStripes);
+        return stripes > 0 && takeFromAnyStripe(couponId, stripes);
+    }
+
+    private boolean takeFromAnyStripe(Long couponId, int stripes) {
+        int start = ThreadLocalRandom.current().nextInt(stripes);
+        for (int i = 0; i < stripes; i++) {
+            if (couponRepository.takeToken(couponId, (start + i) % stripes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Folds the pool back into the coupon row; the next redemption allocates a new one from the new maxUses
+    public void resetPool(Long couponId) {
+        couponRepository.rollUp(couponId, true);
+        stripeCounts.remove(couponId);
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.coupons.pool.roll-up-interval-ms:10000}")
+    public void rollUpPools() {
+        try {
+            for (Long couponId : couponRepository.findPooledCouponIds()) {
+                couponRepository.rollUp(couponId, false);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Coupon pool roll-up failed: " + e.getMessage());
+        }
+    }
+}
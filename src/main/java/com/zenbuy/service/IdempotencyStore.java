@@ -0,0 +1,82 @@
+package com.zenbuy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Remembers the response of each idempotent request for a while. The first request with a key runs the
+// action; concurrent duplicates wait for its result, later replays get the stored response directly.
+// Only successful responses are kept, so a failed request can be retried with the same key. Each key also
+// remembers the hash of the request that used it, and a replay with a different hash is rejected.
+@Service
+@Profile("dev")
+public class IdempotencyStore {
+
+    private record Entry(String requestHash, CompletableFuture<ResponseEntity<?>> response) {
+    }
+
+    private final Cache<String, Entry> responses;
+    private final long waitTimeoutMs;
+
+    public IdempotencyStore(@Value("${zenbuy.idempotency.max-entries:100000}") long maxEntries,
+                            @Value("${zenbuy.idempotency.ttl-minutes:1440}") long ttlMinutes,
+                            @Value("${zenbuy.idempotency.wait-timeout-ms:30000}") long waitTimeoutMs) {
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    // Throws IllegalArgumentException when the key was used with a different request
+    public ResponseEntity<?> execute(String key, String requestHash, Supplier<ResponseEntity<?>> action) {
+        Entry mine = new Entry(requestHash, new CompletableFuture<>());
+        Entry existing = responses.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            if (!existing.requestHash().equals(requestHash)) {
+                throw new IllegalArgumentException("Idempotency-Key was already used with a different request");
+            }
+            return await(existing.response());
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            responses.asMap().remove(key, mine);
+            mine.response().completeExceptionally(e);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            responses.asMap().remove(key, mine);
+        }
+        mine.response().complete(response);
+        return response;
+    }
+
+    private ResponseEntity<?> await(CompletableFuture<ResponseEntity<?>> inFlight) {
+        try {
+            return inFlight.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("A request with this Idempotency-Key is still being processed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the original request");
+        }
+    }
+}
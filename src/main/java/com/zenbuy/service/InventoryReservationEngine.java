@@ -0,0 +1,625 @@
+package com.zenbuy.service;
+
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.InventoryNodeRepository;
+import com.zenbuy.repository.OrderItemRepository;
+import com.zenbuy.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Holds stock for products marked hot in striped in-memory counters. Each node sells only from its own
+// slice of the stock: units are claimed from the product in a short transaction (they move from
+// stock - held into held and a hot_stock_slices row), so the guarded UPDATEs of other nodes and of the
+// per-row checkout path can never sell them. Slices are sized on the flush tick, never during checkout:
+// each node keeps its share of the unsold stock (up to slice-size), claims more when its counter falls to
+// half of that share and gives back what it holds above it, so no node sits on stock another node could
+// sell. Once a share drops below slice-low-water, the slices are given back entirely and the last units
+// are sold through the guarded row UPDATE, like any checkout that finds its counter empty.
+// Checkout reserves against the counter without touching the product row; the order items are saved with stockApplied = false and the node that sold them, and the
+// scheduled flusher writes their quantities back to the product and the slice in batches. Because the
+// slice and the unapplied order items are durable, a counter can always be rebuilt as
+// allotted - unapplied - in flight. Slices belong to a node id leased in inventory_nodes (the configured
+// zenbuy.node-id, or the lowest free id), so two live processes never share one. A node stops selling from
+// its counters when it cannot renew the lease, and other nodes give the unsold part of the slices of an
+// expired id back to the products.
+@Service
+@Profile("dev")
+public class InventoryReservationEngine {
+
+    public enum Reservation { RESERVED, NOT_MANAGED }
+
+    private static final long FREEZE_TIMEOUT_MS = 5000;
+
+    private final ProductRepository productRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InventoryNodeRepository nodeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int configuredNodeId;
+    // Identifies this process in inventory_nodes
+    private final String owner;
+    private final int stripes;
+    private final int flushBatchSize;
+    private final int sliceSize;
+    private final int sliceLowWater;
+    private final int leaseSeconds;
+
+    private final ConcurrentHashMap<Long, StripedStock> counters = new ConcurrentHashMap<>();
+    // Leased node id, -1 until the lease is taken
+    private volatile int nodeId = -1;
+    // System.nanoTime() of the last successful lease renewal; counters are only used while it is recent
+    private volatile long leaseRenewedAt = System.nanoTime();
+
+    public InventoryReservationEngine(ProductRepository productRepository,
+                                      OrderItemRepository orderItemRepository,
+                                      ApplicationEventPublisher eventPublisher,
+                                      PlatformTransactionManager transactionManager,
+                                      InventoryNodeRepository nodeRepository,
+                                      @Value("${zenbuy.node-id:-1}") int configuredNodeId,
+                                      @Value("${zenbuy.inventory.stripes:16}") int stripes,
+                                      @Value("${zenbuy.inventory.flush-batch-size:500}") int flushBatchSize,
+                                      @Value("${zenbuy.inventory.slice-size:100}") int sliceSize,
+                                      @Value("${zenbuy.inventory.slice-low-water:10}") int sliceLowWater,
+                                      @Value("${zenbuy.inventory.node-lease-seconds:30}") int leaseSeconds) {
+        this.productRepository = productRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.nodeRepository = nodeRepository;
+        this.configuredNodeId = configuredNodeId;
+        this.owner = hostName() + "/" + UUID.randomUUID();
+        this.stripes = Integer.highestOneBit(Math.max(1, stripes));
+        this.flushBatchSize = flushBatchSize;
+        this.sliceSize = Math.max(1, sliceSize);
+        this.sliceLowWater = Math.max(1, sliceLowWater);
+        this.leaseSeconds = Math.max(2, leaseSeconds);
+    }
+
+    public int nodeId() {
+        return nodeId;
+    }
+
+    public boolean isHot(Long productId) {
+        return counters.containsKey(productId);
+    }
+
+    // Reserves stock in memory. Inside a transaction the reservation is released again on rollback.
+    // NOT_MANAGED sends checkout to the guarded row UPDATE, also when the counter is short: claiming here
+    // would need a second connection while the checkout transaction holds one.
+    public Reservation reserve(Long productId, int quantity) {
+        StripedStock stock = counters.get(productId);
+        if (stock == null || nodeId < 0 || !leaseHeld() || !stock.enter()) {
+            return Reservation.NOT_MANAGED;
+        }
+        if (!stock.tryTake(quantity)) {
+            stock.exit(0);
+            return Reservation.NOT_MANAGED;
+        }
+        stock.inFlightUnits.add(quantity);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        stock.release(quantity);
+                    }
+                    stock.exit(quantity);
+                }
+            });
+        } else {
+            stock.exit(quantity);
+        }
+        return Reservation.RESERVED;
+    }
+
+    // The lease is renewed by every flush tick; without a renewal for half the lease, other nodes may soon
+    // reclaim this node's slices, so checkout falls back to the product row
+    private boolean leaseHeld() {
+        return System.nanoTime() - leaseRenewedAt < TimeUnit.SECONDS.toNanos(leaseSeconds) / 2;
+    }
+
+    // Writes the stock of committed hot-product order items back to the products table
+    public int flush() {
+        int total = 0;
+        while (true) {
+            Integer applied = transactionTemplate.execute(this::flushBatch);
+            if (applied == null || applied == 0) {
+                return total;
+            }
+            total += applied;
+            if (applied < flushBatchSize) {
+                return total;
+            }
+        }
+    }
+
+    private int flushBatch(TransactionStatus status) {
+        List<OrderItemRepository.UnappliedStock> rows =
+                orderItemRepository.findUnappliedStock(PageRequest.of(0, flushBatchSize));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Long> itemIds = new ArrayList<>(rows.size());
+        // Sorted by product id so concurrent flushers lock product rows in the same order
+        Map<Long, Map<Integer, Integer>> sliceSales = new TreeMap<>();
+        Map<Long, Integer> rowDeltas = new TreeMap<>();
+        for (OrderItemRepository.UnappliedStock row : rows) {
+            itemIds.add(row.getId());
+            if (row.getStockNode() != null) {
+                sliceSales.computeIfAbsent(row.getProductId(), id -> new TreeMap<>())
+                        .merge(row.getStockNode(), row.getQuantity(), Integer::sum);
+            } else {
+                // Reserved before slices existed
+                rowDeltas.merge(row.getProductId(), row.getQuantity(), Integer::sum);
+            }
+        }
+        if (orderItemRepository.markStockApplied(itemIds) != itemIds.size()) {
+            // Another node claimed some of these items first; retry on the next tick
+            status.setRollbackOnly();
+            return 0;
+        }
+        if (!sliceSales.isEmpty()) {
+            List<Long> productIds = new ArrayList<>();
+            List<Integer> nodeIds = new ArrayList<>();
+            List<Integer> quantities = new ArrayList<>();
+            sliceSales.forEach((productId, byNode) -> byNode.forEach((node, quantity) -> {
+                productIds.add(productId);
+                nodeIds.add(node);
+                quantities.add(quantity);
+            }));
+            productRepository.applySliceSales(productIds, nodeIds, quantities);
+        }
+        if (!rowDeltas.isEmpty()) {
+            productRepository.subtractStockBatch(new ArrayList<>(rowDeltas.keySet()), new ArrayList<>(rowDeltas.values()));
+        }
+        Set<Long> changed = new TreeSet<>(sliceSales.keySet());
+        changed.addAll(rowDeltas.keySet());
+        eventPublisher.publishEvent(CatalogChangedEvent.stockChanged(changed));
+        return rows.size();
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.inventory.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Inventory flush failed: " + e.getMessage());
+        }
+        try {
+            renewLease();
+            reclaimOrphanedSlices();
+        } catch (RuntimeException e) {
+            System.err.println("Inventory node lease renewal failed: " + e.getMessage());
+            return;
+        }
+        try {
+            resizeSlices();
+        } catch (RuntimeException e) {
+            System.err.println("Inventory slice resize failed: " + e.getMessage());
+        }
+    }
+
+    // Moves every slice of this node towards its share of the unsold stock
+    private void resizeSlices() {
+        int node = nodeId;
+        if (node < 0 || !leaseHeld()) {
+            return;
+        }
+        int nodes = Math.max(1, nodeRepository.findLiveNodeIds(leaseSeconds).size());
+        for (Long productId : new TreeSet<>(counters.keySet())) {
+            StripedStock stock = counters.get(productId);
+            if (stock != null) {
+                resizeSlice(productId, stock, node, nodes);
+            }
+        }
+    }
+
+    // Locked against reload, so the counter and the slice change together
+    private void resizeSlice(Long productId, StripedStock stock, int node, int nodes) {
+        synchronized (stock) {
+            if (stock.retired) {
+                return;
+            }
+            Integer free = productRepository.freeStock(productId);
+            if (free == null) {
+                return;
+            }
+            long unsold = stock.available();
+            long share = (Math.max(0, free) + unsold + nodes - 1) / nodes;
+            long target = share < sliceLowWater ? 0 : Math.min(share, sliceSize);
+            if (target > 0 && unsold <= target / 2) {
+                int wanted = (int) (target - unsold);
+                Integer claimed = transactionTemplate.execute(status -> productRepository.claimSlice(productId, node, wanted));
+                if (claimed != null && claimed > 0) {
+                    stock.release(claimed);
+                }
+            } else if (unsold > target && (target == 0 || unsold - target >= sliceLowWater)) {
+                int taken = stock.drain((int) (unsold - target));
+                if (taken == 0) {
+                    return;
+                }
+                try {
+                    transactionTemplate.executeWithoutResult(status -> productRepository.returnUnits(productId, node, taken));
+                } catch (RuntimeException e) {
+                    stock.release(taken);
+                    throw e;
+                }
+                eventPublisher.publishEvent(CatalogChangedEvent.stockChanged(Set.of(productId)));
+            }
+        }
+    }
+
+    private void renewLease() {
+        if (nodeId < 0 || nodeRepository.renew(nodeId, owner) == 0) {
+            if (nodeId >= 0) {
+                // Another process took the id over after the lease expired and now owns its slices
+                System.err.println("Inventory node id " + nodeId + " was taken over, leasing a new one");
+                counters.forEach(this::retire);
+                nodeId = -1;
+            }
+            rebuild();
+            return;
+        }
+        long previous = leaseRenewedAt;
+        long now = System.nanoTime();
+        if (now - previous >= TimeUnit.SECONDS.toNanos(leaseSeconds) / 2) {
+            // Counters were not used while the lease lapsed, and another node may have reclaimed the slices
+            // in the meantime: rebuild them from the database before selling from them again
+            for (Long productId : new TreeSet<>(counters.keySet())) {
+                reload(productId);
+            }
+        }
+        leaseRenewedAt = now;
+    }
+
+    // Gives the unsold part of slices whose node id is no longer leased back to the products
+    private void reclaimOrphanedSlices() {
+        for (Object[] slice : productRepository.findOrphanedSlices(leaseSeconds)) {
+            Long productId = (Long) slice[0];
+            int node = (Integer) slice[1];
+            Integer released = transactionTemplate.execute(status ->
+                    productRepository.reclaimSlice(productId, node, leaseSeconds));
+            if (released != null && released > 0) {
+                System.out.println("Reclaimed " + released + " units of product " + productId + " from node " + node);
+                eventPublisher.publishEvent(CatalogChangedEvent.stockChanged(Set.of(productId)));
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (nodeId < 0) {
+            acquireNodeId();
+        }
+        flush();
+        Set<Long> productIds = new TreeSet<>(counters.keySet());
+        for (Product product : productRepository.findByHotTrue()) {
+            productIds.add(product.getId());
+        }
+        // Slices left by an earlier run of this node are picked up again, or released if no longer hot
+        productIds.addAll(productRepository.findSliceProductIds(nodeId));
+        for (Long productId : productIds) {
+            reload(productId);
+        }
+        leaseRenewedAt = System.nanoTime();
+        System.out.println("Inventory engine rebuilt. Hot products: " + counters.size());
+    }
+
+    // Leases the configured node id, waiting up to one lease for a previous run to let it go, or else the
+    // lowest id no live node holds. Fails rather than share an id, since two processes selling from the same
+    // slices would oversell.
+    private synchronized void acquireNodeId() {
+        if (nodeId >= 0) {
+            return;
+        }
+        if (configuredNodeId > SnowflakeOrderNumberGenerator.MAX_NODE_ID) {
+            throw new IllegalArgumentException("zenbuy.node-id must be between 0 and "
+                    + SnowflakeOrderNumberGenerator.MAX_NODE_ID + ", was " + configuredNodeId);
+        }
+        int leased = -1;
+        if (configuredNodeId >= 0) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(leaseSeconds + 1);
+            while (!tryLease(configuredNodeId)) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("zenbuy.node-id " + configuredNodeId
+                            + " is leased by another live node; every node needs its own id");
+                }
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+            leased = configuredNodeId;
+        } else {
+            Set<Integer> live = new HashSet<>(nodeRepository.findLiveNodeIds(leaseSeconds));
+            for (int candidate = 0; candidate <= SnowflakeOrderNumberGenerator.MAX_NODE_ID && leased < 0; candidate++) {
+                if (!live.contains(candidate) && tryLease(candidate)) {
+                    leased = candidate;
+                }
+            }
+            if (leased < 0) {
+                throw new IllegalStateException("No free inventory node id");
+            }
+        }
+        nodeId = leased;
+        leaseRenewedAt = System.nanoTime();
+        System.out.println("Inventory node id: " + leased);
+    }
+
+    private boolean tryLease(int candidate) {
+        if (nodeRepository.takeOver(candidate, owner, leaseSeconds) > 0) {
+            return true;
+        }
+        if (nodeRepository.existsById(candidate)) {
+            return false;
+        }
+        try {
+            return nodeRepository.insert(candidate, owner) > 0;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    // Returns this node's unsold slices and its id on a clean shutdown so other nodes can use them straight away
+    @PreDestroy
+    public void releaseSlices() {
+        if (nodeId < 0) {
+            return;
+        }
+        try {
+            for (Long productId : productRepository.findSliceProductIds(nodeId)) {
+                StripedStock stock = counters.remove(productId);
+                if (stock != null) {
+                    stock.freeze();
+                    stock.retired = true;
+                    stock.unfreeze();
+                }
+                flush();
+                transactionTemplate.execute(status -> productRepository.releaseSlice(productId, nodeId));
+            }
+            nodeRepository.release(nodeId, owner);
+        } catch (RuntimeException e) {
+            System.err.println("Releasing inventory slices failed, other nodes reclaim them when the lease ends: " + e.getMessage());
+        }
+    }
+
+    // Recomputes one product's counter from this node's slice, or drops the counter and releases the slice
+    // if the product is no longer hot. On failure the counter is dropped, so checkout uses the product row.
+    public void reload(Long productId) {
+        StripedStock stock = counters.computeIfAbsent(productId, id -> new StripedStock(stripes));
+        synchronized (stock) {
+            reload(productId, stock);
+        }
+    }
+
+    private void reload(Long productId, StripedStock stock) {
+        stock.freeze();
+        try {
+            Long available = transactionTemplate.execute(status -> {
+                Product product = productRepository.findById(productId).orElse(null);
+                if (product == null || !product.isHot()) {
+                    return null;
+                }
+                int[] slice = productRepository.sliceState(productId, nodeId);
+                return (long) slice[0] - slice[1];
+            });
+            if (available == null) {
+                // Apply everything reserved so far before checkout falls back to the product row
+                retire(productId, stock);
+                flush();
+                transactionTemplate.execute(status -> productRepository.releaseSlice(productId, nodeId));
+            } else {
+                stock.set(Math.max(0, available));
+            }
+        } catch (RuntimeException e) {
+            retire(productId, stock);
+            throw e;
+        } finally {
+            stock.unfreeze();
+        }
+    }
+
+    private void retire(Long productId, StripedStock stock) {
+        stock.retired = true;
+        counters.remove(productId, stock);
+    }
+
+    // Compares each counter with what the database says this node's slice should hold
+    public List<Map<String, Object>> checkConsistency() {
+        Map<Long, Long> available = new TreeMap<>();
+        Map<Long, Long> inFlight = new HashMap<>();
+        counters.forEach((productId, stock) -> {
+            available.put(productId, stock.available());
+            inFlight.put(productId, stock.inFlightUnits.sum());
+        });
+        List<Map<String, Object>> report = new ArrayList<>();
+        available.forEach((productId, units) -> {
+            int[] slice = productRepository.sliceState(productId, nodeId);
+            long expected = slice[0] - slice[1] - inFlight.get(productId);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("productId", productId);
+            row.put("nodeId", nodeId);
+            row.put("available", units);
+            row.put("inFlight", inFlight.get(productId));
+            row.put("sliceAllotted", slice[0]);
+            row.put("unapplied", slice[1]);
+            row.put("drift", units - expected);
+            report.add(row);
+        });
+        return report;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    // Stock split across cache-line-padded stripes. Reservations CAS on a stripe picked by thread, and only
+    // fall back to gathering from several stripes when no single stripe holds enough.
+    private static final class StripedStock {
+
+        private static final int PAD = 8; // one long per 64-byte cache line
+
+        private final int mask;
+        private final AtomicLongArray cells;
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder inFlightUnits = new LongAdder();
+        private volatile boolean frozen = true;
+        private volatile boolean retired;
+
+        StripedStock(int stripes) {
+            this.mask = stripes - 1;
+            this.cells = new AtomicLongArray(stripes * PAD);
+        }
+
+        // Registers an in-flight reservation; waits while the counter is frozen for a reload
+        boolean enter() {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FREEZE_TIMEOUT_MS);
+            while (true) {
+                inFlight.increment();
+                if (!frozen) {
+                    if (retired) {
+                        inFlight.decrement();
+                        return false;
+                    }
+                    return true;
+                }
+                inFlight.decrement();
+                if (System.nanoTime() > deadline) {
+                    throw new RuntimeException("Inventory is being rebuilt, please retry");
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            }
+        }
+
+        void exit(int units) {
+            inFlightUnits.add(-units);
+            inFlight.decrement();
+        }
+
+        void freeze() {
+            frozen = true;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FREEZE_TIMEOUT_MS);
+            while (inFlight.sum() != 0) {
+                if (System.nanoTime() > deadline) {
+                    frozen = false;
+                    throw new RuntimeException("Timed out waiting for in-flight reservations to finish");
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        void unfreeze() {
+            frozen = false;
+        }
+
+        boolean tryTake(int quantity) {
+            int home = homeStripe();
+            for (int i = 0; i <= mask; i++) {
+                int index = ((home + i) & mask) * PAD;
+                long current = cells.get(index);
+                while (current >= quantity) {
+                    if (cells.compareAndSet(index, current, current - quantity)) {
+                        return true;
+                    }
+                    current = cells.get(index);
+                }
+            }
+            // No single stripe is big enough: gather from all of them, and put it back if the total falls short
+            long remaining = quantity;
+            long[] taken = new long[mask + 1];
+            for (int i = 0; i <= mask && remaining > 0; i++) {
+                int stripe = (home + i) & mask;
+                long current;
+                while (remaining > 0 && (current = cells.get(stripe * PAD)) > 0) {
+                    long take = Math.min(current, remaining);
+                    if (cells.compareAndSet(stripe * PAD, current, current - take)) {
+                        taken[stripe] += take;
+                        remaining -= take;
+                    }
+                }
+            }
+            if (remaining == 0) {
+                return true;
+            }
+            for (int stripe = 0; stripe <= mask; stripe++) {
+                if (taken[stripe] > 0) {
+                    cells.addAndGet(stripe * PAD, taken[stripe]);
+                }
+            }
+            return false;
+        }
+
+        void release(int quantity) {
+            cells.addAndGet(homeStripe() * PAD, quantity);
+        }
+
+        // Takes up to max units from any stripes; returns how many it got
+        int drain(int max) {
+            long remaining = max;
+            for (int stripe = 0; stripe <= mask && remaining > 0; stripe++) {
+                long current;
+                while (remaining > 0 && (current = cells.get(stripe * PAD)) > 0) {
+                    long take = Math.min(current, remaining);
+                    if (cells.compareAndSet(stripe * PAD, current, current - take)) {
+                        remaining -= take;
+                    }
+                }
+            }
+            return (int) (max - remaining);
+        }
+
+        // Only called while frozen
+        void set(long total) {
+            long share = total / (mask + 1);
+            for (int stripe = 0; stripe <= mask; stripe++) {
+                cells.set(stripe * PAD, stripe == 0 ? share + total % (mask + 1) : share);
+            }
+        }
+
+        long available() {
+            long sum = 0;
+            for (int stripe = 0; stripe <= mask; stripe++) {
+                sum += cells.get(stripe * PAD);
+            }
+            return sum;
+        }
+
+        private int homeStripe() {
+            return (int) Thread.currentThread().getId() & mask;
+        }
+    }
+}
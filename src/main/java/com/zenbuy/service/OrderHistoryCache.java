@@ -0,0 +1,60 @@
+package com.zenbuy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.zenbuy.model.Order;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Per-user order history, bounded by size and TTL. Entries are evicted on every node through
+// CacheInvalidationService when a user's order is created or changes status.
+@Service
+@Profile("dev")
+public class OrderHistoryCache {
+
+    static final String CACHE_NAME = "order-history";
+
+    private final Cache<Long, List<Order>> cache;
+    private final CacheInvalidationService invalidationService;
+
+    public OrderHistoryCache(CacheInvalidationService invalidationService,
+                             @Value("${zenbuy.cache.order-history.max-users:10000}") long maxUsers,
+                             @Value("${zenbuy.cache.order-history.ttl-minutes:10}") long ttlMinutes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.invalidationService = invalidationService;
+        invalidationService.register(CACHE_NAME, key -> cache.invalidate(Long.valueOf(key)));
+    }
+
+    public List<Order> get(Long userId, Function<Long, List<Order>> loader) {
+        return cache.get(userId, loader);
+    }
+
+    // Evicts after the current transaction commits, here and on every other node
+    public void invalidate(Long userId) {
+        invalidationService.publish(CACHE_NAME, String.valueOf(userId));
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("averageLoadMillis", stats.averageLoadPenalty() / 1_000_000.0);
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+package com.zenbuy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zenbuy.model.Order;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Optional asynchronous checkout. Requests are validated cheaply and queued; a fixed set of workers drains
+// the queue and commits up to batchSize orders per transaction (group commit). If anything in a batch
+// fails, the batch is rolled back and its orders are retried one transaction each through placeOrder, so
+// one bad order cannot fail its neighbours and version conflicts or deadlocks get the same retries as the
+// synchronous checkout. Only the workers hold database connections, never the HTTP threads.
+@Service
+@Profile("dev")
+@ConditionalOnProperty(name = "zenbuy.orders.intake.enabled", havingValue = "true")
+public class OrderIntakeService {
+
+    public record IntakeStatus(String state, Long orderId, String orderNumber, String error, LocalDateTime acceptedAt) {
+    }
+
+    private record Ticket(String trackingId, Long userId, OrderService.OrderRequest request, LocalDateTime acceptedAt) {
+    }
+
+    private final OrderService orderService;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Ticket> queue;
+    private final Cache<String, IntakeStatus> statuses;
+    private final int batchSize;
+    private final int workerCount;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public OrderIntakeService(OrderService orderService,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${zenbuy.orders.intake.queue-capacity:10000}") int queueCapacity,
+                              @Value("${zenbuy.orders.intake.batch-size:50}") int batchSize,
+                              @Value("${zenbuy.orders.intake.workers:2}") int workerCount,
+                              @Value("${zenbuy.orders.intake.status-ttl-minutes:60}") long statusTtlMinutes) {
+        this.orderService = orderService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(queueCapacity * 10L)
+                .expireAfterWrite(Duration.ofMinutes(statusTtlMinutes))
+                .build();
+        this.batchSize = batchSize;
+        this.workerCount = workerCount;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::drain, "order-intake-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    // Returns the tracking id, or null when the queue is full
+    public String submit(Long userId, OrderService.OrderRequest request) {
+        validate(userId, request);
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), userId, request, LocalDateTime.now());
+        statuses.put(ticket.trackingId(), new IntakeStatus("QUEUED", null, null, null, ticket.acceptedAt()));
+        if (!running || !queue.offer(ticket)) {
+            statuses.invalidate(ticket.trackingId());
+            return null;
+        }
+        return ticket.trackingId();
+    }
+
+    public IntakeStatus getStatus(String trackingId) {
+        return statuses.getIfPresent(trackingId);
+    }
+
+    // Checks that need no database access; everything else is reported through the status endpoint
+    private void validate(Long userId, OrderService.OrderRequest request) {
+        if (userId == null || request == null) {
+            throw new RuntimeException("Invalid request: userId and order are required");
+        }
+        if (request.getShippingAddress() == null) {
+            throw new RuntimeException("Shipping address is required");
+        }
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            throw new RuntimeException("Order must contain at least one item");
+        }
+        for (OrderService.OrderItemRequest item : request.getItems()) {
+            if (item.getProductId() == null || item.getQuantity() <= 0) {
+                throw new RuntimeException("Invalid order item: productId and a positive quantity are required");
+            }
+        }
+    }
+
+    private void drain() {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Ticket first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Order intake worker error: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Ticket> batch) {
+        if (batch.size() > 1) {
+            try {
+                List<Order> orders = transactionTemplate.execute(status -> {
+                    List<Order> created = new ArrayList<>(batch.size());
+                    for (Ticket ticket : batch) {
+                        created.add(orderService.createOrder(ticket.userId(), ticket.request()));
+                    }
+                    return created;
+                });
+                for (int i = 0; i < batch.size(); i++) {
+                    completed(batch.get(i), orders.get(i));
+                }
+                return;
+            } catch (RuntimeException e) {
+                // Fall through and isolate the failing order
+            }
+        }
+        for (Ticket ticket : batch) {
+            try {
+                completed(ticket, orderService.placeOrder(ticket.userId(), ticket.request(), null, null));
+            } catch (RuntimeException e) {
+                statuses.put(ticket.trackingId(), new IntakeStatus("FAILED", null, null,
+                        e.getMessage() != null ? e.getMessage() : "An error occurred while processing the order",
+                        ticket.acceptedAt()));
+            }
+        }
+    }
+
+    private void completed(Ticket ticket, Order order) {
+        statuses.put(ticket.trackingId(),
+                new IntakeStatus("COMPLETED", order.getId(), order.getOrderNumber(), null, ticket.acceptedAt()));
+    }
+}
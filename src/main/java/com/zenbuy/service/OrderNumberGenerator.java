@@ -0,0 +1,7 @@
+package com.zenbuy.service;
+
+public interface OrderNumberGenerator {
+
+    // Unique across nodes; later numbers sort after earlier ones
+    String nextOrderNumber();
+}
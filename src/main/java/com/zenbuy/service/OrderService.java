@@ -1,31 +1,115 @@
 package com.zenbuy.service;
 
+import com.zenbuy.dto.OrderView;
 import com.zenbuy.model.*;
 import com.zenbuy.repository.*;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.context.annotation.Profile;
 
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @Profile("dev")   
 public class OrderService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100; // matches @BatchSize on Order.items
+    private static final List<String> ORDER_STATUSES = List.of("PENDING", "CONFIRMED", "SHIPPED", "DELIVERED", "CANCELLED");
+
     private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
-
-    public OrderService(OrderRepository orderRepository, UserRepository userRepository, ProductRepository productRepository) {
+    private final InventoryReservationEngine inventoryEngine;
+    private final OrderNumberGenerator orderNumberGenerator;
+    private final OrderHistoryCache orderHistoryCache;
+    private final CouponRedemptionService couponRedemptionService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean batchMode;
+    private final int historyPageSize;
+    private final int retryAttempts;
+    private final long retryBackoffMs;
+
+    public OrderService(OrderRepository orderRepository, OrderItemRepository orderItemRepository,
+                        UserRepository userRepository, ProductRepository productRepository,
+                        InventoryReservationEngine inventoryEngine, OrderNumberGenerator orderNumberGenerator,
+                        OrderHistoryCache orderHistoryCache, CouponRedemptionService couponRedemptionService,
+                        ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                        @Value("${zenbuy.checkout.batch-mode:true}") boolean batchMode,
+                        @Value("${zenbuy.orders.history.page-size:20}") int historyPageSize,
+                        @Value("${zenbuy.checkout.retry.max-attempts:3}") int retryAttempts,
+                        @Value("${zenbuy.checkout.retry.backoff-ms:20}") long retryBackoffMs) {
         this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
         this.userRepository = userRepository;
         this.productRepository = productRepository;
+        this.inventoryEngine = inventoryEngine;
+        this.orderNumberGenerator = orderNumberGenerator;
+        this.orderHistoryCache = orderHistoryCache;
+        this.couponRedemptionService = couponRedemptionService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchMode = batchMode;
+        this.historyPageSize = historyPageSize;
+        this.retryAttempts = Math.max(1, retryAttempts);
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    // Checkout entry point for the API. A transaction that loses a version check, a lock wait or a deadlock
+    // is rolled back as a whole (in-memory reservations included) and retried with jittered exponential
+    // backoff, up to retryAttempts times. Inside a caller's transaction there is nothing safe to retry.
+    public Order placeOrder(Long userId, OrderRequest request, String idempotencyKey, String requestHash) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return createOrder(userId, request, idempotencyKey, requestHash);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> createOrder(userId, request, idempotencyKey, requestHash));
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= retryAttempts) {
+                    throw e;
+                }
+                long ceiling = retryBackoffMs << (attempt - 1);
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
     }
 
     @Transactional
     public Order createOrder(Long userId, OrderRequest request) {
+        return createOrder(userId, request, null, null);
+    }
+
+    // idempotencyKey is stored in a unique column so a retried request cannot create a second order on any node;
+    // requestHash is kept next to it so a replay with a different body can be told apart
+    @Transactional
+    public Order createOrder(Long userId, OrderRequest request, String idempotencyKey, String requestHash) {
         // Find user
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -35,19 +119,20 @@ public class OrderService {
         order.setUser(user);
         order.setSubtotal(request.getSubtotal());
         order.setShipping(request.getShipping());
-        order.setDiscount(request.getDiscount());
-        order.setTotal(request.getTotal());
         order.setPaymentMethod(request.getPaymentMethod() != null && !request.getPaymentMethod().isEmpty() 
             ? request.getPaymentMethod() : "CARD");
         // Set payment status from request, default to COMPLETED
         order.setPaymentStatus(request.getPaymentStatus() != null && !request.getPaymentStatus().isEmpty() 
             ? request.getPaymentStatus() : "COMPLETED");
         order.setStatus("CONFIRMED");
+        order.setIdempotencyKey(idempotencyKey);
+        order.setRequestHash(requestHash);
         // Set transaction ID if provided (for PayU, etc.)
         if (request.getTransactionId() != null && !request.getTransactionId().isEmpty()) {
             order.setTransactionId(request.getTransactionId());
         }
-        // OrderDate and OrderNumber will be set by @PrePersist
+        order.setOrderNumber(orderNumberGenerator.nextOrderNumber());
+        // OrderDate will be set by @PrePersist
         // Validate and set shipping address (handle nulls to prevent database errors)
         if (request.getShippingAddress() == null) {
             throw new RuntimeException("Shipping address is required");
@@ -62,19 +147,23 @@ public class OrderService {
             ? request.getShippingAddress().getPincode() : "");
 
         // Create order items and update product stock
-        List<OrderItem> items = new ArrayList<>();
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            throw new RuntimeException("Order must contain at least one item");
+        }
         for (OrderItemRequest itemRequest : request.getItems()) {
-            Product product = productRepository.findById(itemRequest.getProductId())
-                    .orElseThrow(() -> new RuntimeException("Product not found: " + itemRequest.getProductId()));
-
-            // Check stock availability
-            if (product.getStockQuantity() < itemRequest.getQuantity()) {
-                throw new RuntimeException("Insufficient stock for product: " + product.getName());
+            if (itemRequest.getProductId() == null || itemRequest.getQuantity() <= 0) {
+                throw new RuntimeException("Invalid order item: productId and a positive quantity are required");
             }
+        }
+        // Hot products reserve in memory; everything else goes through the guarded UPDATE on the product row
+        Map<Long, Product> products = new HashMap<>();
+        List<OrderItemRequest> rowItems = reserveHotStock(request.getItems(), products);
+        Set<Long> hotProductIds = new HashSet<>(products.keySet());
+        products.putAll(batchMode ? reserveStockBatched(rowItems) : reserveStockPerItem(rowItems));
 
-            // Update stock
-            product.setStockQuantity(product.getStockQuantity() - itemRequest.getQuantity());
-            productRepository.save(product);
+        List<OrderItem> items = new ArrayList<>();
+        for (OrderItemRequest itemRequest : request.getItems()) {
+            Product product = products.get(itemRequest.getProductId());
 
             // Create order item
             OrderItem orderItem = new OrderItem();
@@ -84,16 +173,124 @@ public class OrderService {
             orderItem.setPrice(itemRequest.getPrice());
             orderItem.setQuantity(itemRequest.getQuantity());
             orderItem.setImageUrl(itemRequest.getImageUrl());
+            // The write-behind flusher applies the stock of hot products later, from this node's slice
+            if (hotProductIds.contains(itemRequest.getProductId())) {
+                orderItem.setStockApplied(false);
+                orderItem.setStockNode(inventoryEngine.nodeId());
+            }
 
             items.add(orderItem);
         }
 
         order.setItems(items);
-        return orderRepository.save(order);
+        // The discount comes from the coupon, never from the client. Claimed last, after the stock rows, so the
+        // coupon's lock is held as briefly as possible; the use is given back if the order rolls back.
+        double discount = 0;
+        if (request.getCouponCode() != null && !request.getCouponCode().isBlank()) {
+            CouponRedemptionService.Redemption redemption =
+                    couponRedemptionService.redeem(request.getCouponCode(), request.getSubtotal());
+            order.setCouponCode(redemption.code());
+            discount = redemption.discount();
+        } else if (request.getDiscount() > 0) {
+            throw new RuntimeException("A coupon code is required for a discount");
+        }
+        order.setDiscount(discount);
+        order.setTotal(Math.round(Math.max(0, request.getSubtotal() + request.getShipping() - discount) * 100) / 100.0);
+        Order saved = orderRepository.save(order);
+        orderHistoryCache.invalidate(userId);
+        if (!rowItems.isEmpty()) {
+            // Delivered after commit; hot products change stock when the inventory engine flushes
+            Set<Long> stockChanged = new HashSet<>();
+            rowItems.forEach(itemRequest -> stockChanged.add(itemRequest.getProductId()));
+            eventPublisher.publishEvent(CatalogChangedEvent.stockChanged(stockChanged));
+        }
+        return saved;
+    }
+
+    // Returns the items that were not handled by the in-memory inventory engine
+    private List<OrderItemRequest> reserveHotStock(List<OrderItemRequest> itemRequests, Map<Long, Product> products) {
+        List<OrderItemRequest> rowItems = new ArrayList<>();
+        for (OrderItemRequest itemRequest : itemRequests) {
+            switch (inventoryEngine.reserve(itemRequest.getProductId(), itemRequest.getQuantity())) {
+                case RESERVED -> products.put(itemRequest.getProductId(), productRepository.getReferenceById(itemRequest.getProductId()));
+                case NOT_MANAGED -> rowItems.add(itemRequest);
+            }
+        }
+        return rowItems;
+    }
+
+    // One guarded UPDATE per line item; products are referenced through lazy proxies
+    private Map<Long, Product> reserveStockPerItem(List<OrderItemRequest> itemRequests) {
+        Map<Long, Product> products = new HashMap<>();
+        for (OrderItemRequest itemRequest : itemRequests) {
+            // Reserve stock with a single guarded UPDATE so concurrent checkouts cannot oversell
+            if (productRepository.decrementStock(itemRequest.getProductId(), itemRequest.getQuantity()) == 0) {
+                Product product = productRepository.findById(itemRequest.getProductId())
+                        .orElseThrow(() -> new RuntimeException("Product not found: " + itemRequest.getProductId()));
+                throw new RuntimeException("Insufficient stock for product: " + product.getName());
+            }
+            products.put(itemRequest.getProductId(), productRepository.getReferenceById(itemRequest.getProductId()));
+        }
+        return products;
+    }
+
+    // One IN query for the whole cart, then one JDBC batch of guarded UPDATEs.
+    // Rows are updated in product id order so concurrent carts cannot deadlock on each other.
+    private Map<Long, Product> reserveStockBatched(List<OrderItemRequest> itemRequests) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItemRequest itemRequest : itemRequests) {
+            quantities.merge(itemRequest.getProductId(), itemRequest.getQuantity(), Integer::sum);
+        }
+
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(quantities.keySet())) {
+            products.put(product.getId(), product);
+        }
+        for (Long productId : quantities.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new RuntimeException("Product not found: " + productId);
+            }
+        }
+
+        List<Long> productIds = new ArrayList<>(quantities.keySet());
+        int[] reserved = productRepository.decrementStockBatch(productIds, new ArrayList<>(quantities.values()));
+        for (int i = 0; i < reserved.length; i++) {
+            if (reserved[i] == 0) {
+                throw new RuntimeException("Insufficient stock for product: " + products.get(productIds.get(i)).getName());
+            }
+        }
+        return products;
     }
 
     public List<Order> getUserOrders(Long userId) {
-        return orderRepository.findByUserIdOrderByOrderDateDesc(userId);
+        return orderHistoryCache.get(userId, orderRepository::findByUserIdOrderByOrderDateDesc);
+    }
+
+    // One page of a user's orders. Items for the whole page come from a single IN query (@BatchSize on items).
+    @Transactional(readOnly = true)
+    public OrderPage getUserOrdersPage(Long userId, String cursor, Integer size) {
+        int pageSize = Math.min(Math.max(size != null ? size : historyPageSize, 1), MAX_HISTORY_PAGE_SIZE);
+        Limit limit = Limit.of(pageSize + 1);
+        List<Order> orders;
+        if (cursor == null || cursor.isEmpty()) {
+            orders = orderRepository.findFirstPageByUserId(userId, limit);
+        } else {
+            OrderCursor after = OrderCursor.decode(cursor);
+            orders = orderRepository.findPageByUserIdAfter(userId, after.orderDate(), after.id(), limit);
+        }
+
+        String nextCursor = null;
+        if (orders.size() > pageSize) {
+            orders = new ArrayList<>(orders.subList(0, pageSize));
+            Order last = orders.get(pageSize - 1);
+            nextCursor = new OrderCursor(last.getOrderDate(), last.getId()).encode();
+        }
+        orders.forEach(order -> Hibernate.initialize(order.getItems()));
+        return new OrderPage(orders, nextCursor);
+    }
+
+    public Optional<Order> findByIdempotencyKey(String idempotencyKey) {
+        return orderRepository.findByIdempotencyKey(idempotencyKey);
     }
 
     public Order getOrderById(Long orderId) {
@@ -101,6 +298,55 @@ public class OrderService {
                 .orElseThrow(() -> new RuntimeException("Order not found"));
     }
 
+    @Transactional
+    public Order updateOrderStatus(Long orderId, String status) {
+        if (status == null || !ORDER_STATUSES.contains(status.toUpperCase())) {
+            throw new RuntimeException("Invalid status. Allowed: " + ORDER_STATUSES);
+        }
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found"));
+        order.setStatus(status.toUpperCase());
+        orderHistoryCache.invalidate(order.getUser().getId());
+        return order;
+    }
+
+    // Read model: one query for the header and one for the items, finished before the response is rendered
+    @Transactional(readOnly = true)
+    public OrderView getOrderView(Long orderId) {
+        OrderView order = orderRepository.findViewById(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found"));
+        return order.withItems(orderItemRepository.findViewsByOrderId(order.id()));
+    }
+
+    @Transactional(readOnly = true)
+    public OrderView getOrderViewByNumber(String orderNumber) {
+        OrderView order = orderRepository.findViewByOrderNumber(orderNumber)
+                .orElseThrow(() -> new RuntimeException("Order not found"));
+        return order.withItems(orderItemRepository.findViewsByOrderId(order.id()));
+    }
+
+    public record OrderPage(List<Order> orders, String nextCursor) {
+    }
+
+    // Opaque keyset cursor: the (orderDate, id) of the last order on the previous page
+    record OrderCursor(LocalDateTime orderDate, Long id) {
+
+        String encode() {
+            String raw = orderDate + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static OrderCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new OrderCursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Invalid cursor");
+            }
+        }
+    }
+
     // DTOs for request
     public static class OrderRequest {
         private List<OrderItemRequest> items;
@@ -111,6 +357,7 @@ public class OrderService {
         private String paymentMethod;
         private String paymentStatus; // COMPLETED, PENDING, FAILED
         private String transactionId; // For PayU and other payment gateways
+        private String couponCode;
         private ShippingAddress shippingAddress;
 
         public List<OrderItemRequest> getItems() {
@@ -177,6 +424,14 @@ public class OrderService {
             this.transactionId = transactionId;
         }
 
+        public String getCouponCode() {
+            return couponCode;
+        }
+
+        public void setCouponCode(String couponCode) {
+            this.couponCode = couponCode;
+        }
+
         public ShippingAddress getShippingAddress() {
             return shippingAddress;
         }
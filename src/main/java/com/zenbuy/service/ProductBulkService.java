@@ -0,0 +1,517 @@
+package com.zenbuy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streaming catalog import and export for admins. Imports read CSV or NDJSON one record at a time and upsert
+// by product name in JDBC batches of batchSize, each in its own transaction, so memory stays bounded by one
+// batch and a failure only costs that batch. A batch rejected for its data is retried row by row to report
+// the bad lines; any other database error stops the import.
+// Progress of running and recent imports is kept in memory for the status endpoint.
+// Warehouse stock sync streams (productId, stock or delta) rows the same way and applies each chunk as one
+// JDBC batch of UPDATEs on product_inventory in its own transaction, sorted by product id like checkout so
+// the two lock rows in the same order. Rows that match no product or would drive stock negative are
+// reported individually and do not affect the rest of the chunk.
+@Service
+@Profile("dev")
+public class ProductBulkService {
+
+    public static final List<String> CSV_COLUMNS =
+            List.of("id", "name", "description", "price", "imageUrl", "category", "stockQuantity", "hot");
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    public record ImportStatus(String id, String format, String state, long rowsRead, long rowsWritten,
+                               long rowsFailed, List<String> errors, LocalDateTime startedAt, LocalDateTime finishedAt) {
+    }
+
+    private static final class Progress {
+        final String id = UUID.randomUUID().toString();
+        final String format;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsWritten = new AtomicLong();
+        final AtomicLong rowsFailed = new AtomicLong();
+        final List<String> errors = new ArrayList<>();
+        volatile String state = "RUNNING";
+        volatile LocalDateTime finishedAt;
+
+        Progress(String format) {
+            this.format = format;
+        }
+
+        synchronized void fail(long line, String message) {
+            rowsFailed.incrementAndGet();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Line " + line + ": " + message);
+            }
+        }
+
+        synchronized ImportStatus status() {
+            return new ImportStatus(id, format, state, rowsRead.get(), rowsWritten.get(), rowsFailed.get(),
+                    List.copyOf(errors), startedAt, finishedAt);
+        }
+    }
+
+    private record Row(long line, Product product) {
+    }
+
+    // One line of a stock sync: exactly one of stock (absolute) and delta is set
+    public record StockAdjustment(Long productId, Integer stock, Integer delta) {
+    }
+
+    public record StockSyncResult(String format, long rowsRead, long rowsUpdated, long rowsFailed, List<String> errors,
+                                  long elapsedMs) {
+    }
+
+    private record StockRow(long line, StockAdjustment adjustment) {
+    }
+
+    private final ProductRepository productRepository;
+    private final InventoryReservationEngine inventoryEngine;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Cache<String, Progress> imports = Caffeine.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(Duration.ofHours(24))
+            .build();
+
+    public ProductBulkService(ProductRepository productRepository,
+                              InventoryReservationEngine inventoryEngine,
+                              ApplicationEventPublisher eventPublisher,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${zenbuy.products.import.batch-size:1000}") int batchSize) {
+        this.productRepository = productRepository;
+        this.inventoryEngine = inventoryEngine;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    public ImportStatus importProducts(InputStream in, String format) {
+        String normalized = normalizeFormat(format);
+        Progress progress = new Progress(normalized);
+        imports.put(progress.id, progress);
+        try (Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            List<Row> batch = new ArrayList<>(batchSize);
+            if (normalized.equals("csv")) {
+                readCsv(reader, batch, progress);
+            } else {
+                readNdjson((BufferedReader) reader, batch, progress);
+            }
+            writeBatch(batch, progress);
+            progress.state = "COMPLETED";
+        } catch (IOException e) {
+            progress.state = "FAILED";
+            progress.fail(progress.rowsRead.get(), "Read error: " + e.getMessage());
+        } catch (RuntimeException e) {
+            progress.state = "FAILED";
+            progress.fail(progress.rowsRead.get(), e.getMessage());
+        } finally {
+            progress.finishedAt = LocalDateTime.now();
+            if (progress.rowsWritten.get() > 0) {
+                // Stock may have changed for hot products, and every derived view of the catalog is stale
+                inventoryEngine.rebuild();
+                eventPublisher.publishEvent(CatalogChangedEvent.allChanged());
+            }
+        }
+        return progress.status();
+    }
+
+    public List<ImportStatus> getImports() {
+        List<ImportStatus> statuses = new ArrayList<>();
+        imports.asMap().values().forEach(progress -> statuses.add(progress.status()));
+        statuses.sort(Comparator.comparing(ImportStatus::startedAt).reversed());
+        return statuses;
+    }
+
+    public ImportStatus getImport(String id) {
+        Progress progress = imports.getIfPresent(id);
+        return progress != null ? progress.status() : null;
+    }
+
+    private void readCsv(Reader reader, List<Row> batch, Progress progress) throws IOException {
+        long[] line = {1};
+        List<String> header = readCsvRecord(reader, line);
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("name")) {
+            throw new RuntimeException("CSV header must contain a name column");
+        }
+        List<String> record;
+        long recordLine = line[0];
+        while ((record = readCsvRecord(reader, line)) != null) {
+            progress.rowsRead.incrementAndGet();
+            try {
+                Product product = new Product();
+                product.setName(field(record, columns, "name"));
+                product.setDescription(field(record, columns, "description"));
+                String price = field(record, columns, "price");
+                product.setPrice(price != null ? Double.parseDouble(price) : 0);
+                product.setImageUrl(field(record, columns, "imageurl"));
+                product.setCategory(field(record, columns, "category"));
+                String stock = field(record, columns, "stockquantity");
+                product.setStockQuantity(stock != null ? Integer.parseInt(stock) : 0);
+                product.setHot(Boolean.parseBoolean(field(record, columns, "hot")));
+                add(batch, new Row(recordLine, product), progress);
+            } catch (RuntimeException e) {
+                progress.fail(recordLine, e.getMessage());
+            }
+            recordLine = line[0];
+        }
+    }
+
+    private void readNdjson(BufferedReader reader, List<Row> batch, Progress progress) throws IOException {
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            progress.rowsRead.incrementAndGet();
+            try {
+                Product product = objectMapper.readValue(text, Product.class);
+                product.setId(null);
+                add(batch, new Row(line, product), progress);
+            } catch (IOException | RuntimeException e) {
+                progress.fail(line, e.getMessage());
+            }
+        }
+    }
+
+    private void add(List<Row> batch, Row row, Progress progress) {
+        Product product = row.product();
+        if (product.getName() == null || product.getName().isBlank()) {
+            throw new RuntimeException("name is required");
+        }
+        if (product.getPrice() < 0 || product.getStockQuantity() < 0) {
+            throw new RuntimeException("price and stockQuantity must not be negative");
+        }
+        batch.add(row);
+        if (batch.size() >= batchSize) {
+            writeBatch(batch, progress);
+        }
+    }
+
+    private void writeBatch(List<Row> batch, Progress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Product> products = new ArrayList<>(batch.size());
+        batch.forEach(row -> products.add(row.product()));
+        try {
+            transactionTemplate.executeWithoutResult(status -> productRepository.upsertBatch(products));
+            progress.rowsWritten.addAndGet(batch.size());
+        } catch (DataIntegrityViolationException batchFailure) {
+            // Find the rows that broke the batch; the others are written on their own
+            for (Row row : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> productRepository.upsertBatch(List.of(row.product())));
+                    progress.rowsWritten.incrementAndGet();
+                } catch (RuntimeException e) {
+                    progress.fail(row.line(), e instanceof DataAccessException dataAccess
+                            ? dataAccess.getMostSpecificCause().getMessage() : e.getMessage());
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    public StockSyncResult adjustStock(InputStream in, String format) {
+        String normalized = normalizeFormat(format);
+        long started = System.nanoTime();
+        Progress progress = new Progress(normalized);
+        Set<Long> hotProducts = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            List<StockRow> chunk = new ArrayList<>(batchSize);
+            if (normalized.equals("csv")) {
+                readStockCsv(reader, chunk, progress, hotProducts);
+            } else {
+                readStockNdjson(reader, chunk, progress, hotProducts);
+            }
+            applyStockChunk(chunk, progress, hotProducts);
+        } catch (IOException e) {
+            progress.fail(progress.rowsRead.get(), "Read error: " + e.getMessage());
+        } finally {
+            // In-memory counters of hot products are recomputed from the new stock
+            hotProducts.forEach(inventoryEngine::reload);
+        }
+        return new StockSyncResult(normalized, progress.rowsRead.get(), progress.rowsWritten.get(), progress.rowsFailed.get(),
+                progress.status().errors(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private void readStockCsv(Reader reader, List<StockRow> chunk, Progress progress, Set<Long> hotProducts) throws IOException {
+        long[] line = {1};
+        List<String> header = readCsvRecord(reader, line);
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("productid") || !(columns.containsKey("stock") || columns.containsKey("delta"))) {
+            throw new RuntimeException("CSV header must contain productId and stock or delta columns");
+        }
+        List<String> record;
+        long recordLine = line[0];
+        while ((record = readCsvRecord(reader, line)) != null) {
+            progress.rowsRead.incrementAndGet();
+            try {
+                String productId = field(record, columns, "productid");
+                String stock = field(record, columns, "stock");
+                String delta = field(record, columns, "delta");
+                addStock(chunk, new StockRow(recordLine, new StockAdjustment(
+                        productId != null ? Long.parseLong(productId.trim()) : null,
+                        stock != null ? Integer.parseInt(stock.trim()) : null,
+                        delta != null ? Integer.parseInt(delta.trim()) : null)), progress, hotProducts);
+            } catch (RuntimeException e) {
+                progress.fail(recordLine, e.getMessage());
+            }
+            recordLine = line[0];
+        }
+    }
+
+    private void readStockNdjson(BufferedReader reader, List<StockRow> chunk, Progress progress, Set<Long> hotProducts) throws IOException {
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            progress.rowsRead.incrementAndGet();
+            try {
+                addStock(chunk, new StockRow(line, objectMapper.readValue(text, StockAdjustment.class)), progress, hotProducts);
+            } catch (IOException | RuntimeException e) {
+                progress.fail(line, e.getMessage());
+            }
+        }
+    }
+
+    private void addStock(List<StockRow> chunk, StockRow row, Progress progress, Set<Long> hotProducts) {
+        StockAdjustment adjustment = row.adjustment();
+        if (adjustment.productId() == null) {
+            throw new RuntimeException("productId is required");
+        }
+        if ((adjustment.stock() == null) == (adjustment.delta() == null)) {
+            throw new RuntimeException("exactly one of stock and delta is required");
+        }
+        if (adjustment.stock() != null && adjustment.stock() < 0) {
+            throw new RuntimeException("stock must not be negative");
+        }
+        chunk.add(row);
+        if (chunk.size() >= batchSize) {
+            applyStockChunk(chunk, progress, hotProducts);
+        }
+    }
+
+    private void applyStockChunk(List<StockRow> chunk, Progress progress, Set<Long> hotProducts) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // Stable sort: several rows for one product are still applied in file order
+        chunk.sort(Comparator.comparing(row -> row.adjustment().productId()));
+        List<Long> productIds = new ArrayList<>(chunk.size());
+        List<Integer> stocks = new ArrayList<>(chunk.size());
+        List<Integer> deltas = new ArrayList<>(chunk.size());
+        for (StockRow row : chunk) {
+            productIds.add(row.adjustment().productId());
+            stocks.add(row.adjustment().stock());
+            deltas.add(row.adjustment().delta());
+        }
+        try {
+            int[] applied = transactionTemplate.execute(status -> {
+                int[] counts = productRepository.applyStockBatch(productIds, stocks, deltas);
+                eventPublisher.publishEvent(CatalogChangedEvent.stockChanged(new HashSet<>(productIds)));
+                return counts;
+            });
+            for (int i = 0; i < chunk.size(); i++) {
+                StockRow row = chunk.get(i);
+                if (applied[i] == 1) {
+                    progress.rowsWritten.incrementAndGet();
+                    if (inventoryEngine.isHot(row.adjustment().productId())) {
+                        hotProducts.add(row.adjustment().productId());
+                    }
+                } else {
+                    progress.fail(row.line(), "product " + row.adjustment().productId()
+                            + " not found or stock would drop below the units held by checkout nodes");
+                }
+            }
+        } catch (RuntimeException e) {
+            String message = e instanceof DataAccessException dataAccess
+                    ? dataAccess.getMostSpecificCause().getMessage() : e.getMessage();
+            chunk.forEach(row -> progress.fail(row.line(), "chunk not applied: " + message));
+        }
+        chunk.clear();
+    }
+
+    // One CSV record per call (RFC 4180: quoted fields may hold commas, quotes and line breaks); null at the end
+    private static List<String> readCsvRecord(Reader reader, long[] line) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    if (c == '\n') {
+                        line[0]++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                line[0]++;
+                fields.add(field.toString());
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    fields.clear(); // blank line
+                    continue;
+                }
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!any || (fields.isEmpty() && field.isEmpty())) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index);
+        return value.isEmpty() ? null : value;
+    }
+
+    // Streams the catalog in id order; nothing but the current row is held in memory
+    public void exportProducts(OutputStream out, String format) {
+        String normalized = normalizeFormat(format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            if (normalized.equals("csv")) {
+                writer.write(String.join(",", CSV_COLUMNS));
+                writer.write('\n');
+            }
+            productRepository.streamAll(product -> {
+                try {
+                    if (normalized.equals("csv")) {
+                        writeCsvRow(writer, product);
+                    } else {
+                        writer.write(objectMapper.writeValueAsString(product));
+                        writer.write('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsvRow(Writer writer, Product product) throws IOException {
+        writer.write(String.valueOf(product.getId()));
+        writer.write(',');
+        writer.write(csv(product.getName()));
+        writer.write(',');
+        writer.write(csv(product.getDescription()));
+        writer.write(',');
+        writer.write(String.valueOf(product.getPrice()));
+        writer.write(',');
+        writer.write(csv(product.getImageUrl()));
+        writer.write(',');
+        writer.write(csv(product.getCategory()));
+        writer.write(',');
+        writer.write(String.valueOf(product.getStockQuantity()));
+        writer.write(',');
+        writer.write(String.valueOf(product.isHot()));
+        writer.write('\n');
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String normalizeFormat(String format) {
+        String normalized = format != null ? format.toLowerCase(Locale.ROOT) : "csv";
+        if (!normalized.equals("csv") && !normalized.equals("ndjson")) {
+            throw new RuntimeException("Invalid format. Allowed: [csv, ndjson]");
+        }
+        return normalized;
+    }
+}
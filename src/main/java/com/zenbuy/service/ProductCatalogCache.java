@@ -0,0 +1,275 @@
+package com.zenbuy.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.zenbuy.model.CacheVersion;
+import com.zenbuy.model.CatalogChange;
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.CacheVersionRepository;
+import com.zenbuy.repository.CatalogChangeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Read-through caches for single products and listing pages, bounded by size and TTL.
+// Local edits evict at once; stock changes from checkout evict the product entries at once and the listing
+// pages on the next tick, so a busy checkout does not empty the listing cache on every order. Each tick
+// bumps the shared catalog counter in cache_versions at most once and records the products it covers in
+// catalog_changes under the new counter value. A counter moved by another node evicts just those products
+// and the listing pages, and publishes a REMOTE CatalogChangedEvent with the same ids, so stock sold on
+// other nodes does not make every node rebuild its search and facet indexes. Only a change to any product,
+// or a gap in the log, drops everything.
+// ETags are built from shared state only, so every node and every restart hands out the same tag for the
+// same data: a product's tag is its @Version, the listing tag is the cache_versions counter. The counter
+// moves at most one tick after a local change, so a listing can trail an edit by that long, as it already
+// does on the other nodes.
+@Service
+@Profile("dev")
+public class ProductCatalogCache {
+
+    static final String CACHE_NAME = "catalog";
+
+    private final Cache<Long, Product> products;
+    private final Cache<List<?>, Object> listings;
+    private final CacheVersionRepository versionRepository;
+    private final CatalogChangeRepository changeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean listingsStale = new AtomicBoolean();
+    // Changes waiting for the next counter bump; null when there are none
+    private PendingChange pending;
+    private final int changeLogSize;
+    private final int maxLoggedIds;
+    private volatile long seenVersion = -1;
+
+    public ProductCatalogCache(CacheVersionRepository versionRepository,
+                               CatalogChangeRepository changeRepository,
+                               ApplicationEventPublisher eventPublisher,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${zenbuy.cache.catalog.max-products:50000}") long maxProducts,
+                               @Value("${zenbuy.cache.catalog.product-ttl-minutes:10}") long productTtlMinutes,
+                               @Value("${zenbuy.cache.catalog.max-listings:1000}") long maxListings,
+                               @Value("${zenbuy.cache.catalog.listing-ttl-seconds:60}") long listingTtlSeconds,
+                               @Value("${zenbuy.cache.catalog.change-log-size:1000}") int changeLogSize,
+                               @Value("${zenbuy.cache.catalog.max-logged-ids:1000}") int maxLoggedIds) {
+        this.products = Caffeine.newBuilder()
+                .maximumSize(maxProducts)
+                .expireAfterWrite(Duration.ofMinutes(productTtlMinutes))
+                .recordStats()
+                .build();
+        this.listings = Caffeine.newBuilder()
+                .maximumSize(maxListings)
+                .expireAfterWrite(Duration.ofSeconds(listingTtlSeconds))
+                .recordStats()
+                .build();
+        this.versionRepository = versionRepository;
+        this.changeRepository = changeRepository;
+        this.changeLogSize = changeLogSize;
+        this.maxLoggedIds = maxLoggedIds;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public Product getProduct(Long id, Function<Long, Product> loader) {
+        return products.get(id, loader);
+    }
+
+    // key must identify the listing completely (query type and every parameter)
+    @SuppressWarnings("unchecked")
+    public <T> T getListing(List<?> key, Supplier<T> loader) {
+        return (T) listings.get(key, k -> loader.get());
+    }
+
+    // Every write to a product, entity or SQL, bumps its version
+    public String productETag(Product product) {
+        return "\"p" + product.getVersion() + "\"";
+    }
+
+    public String listingETag() {
+        long version = seenVersion;
+        if (version < 0) {
+            // Asked before the first poll
+            version = transactionTemplate.execute(status -> readVersion());
+        }
+        return "\"c" + version + "\"";
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (event.origin() == CatalogChangedEvent.Origin.REMOTE) {
+            return;
+        }
+        if (event.productIds().isEmpty()) {
+            products.invalidateAll();
+        } else {
+            products.invalidateAll(event.productIds());
+        }
+        if (event.stockOnly()) {
+            listingsStale.set(true);
+        } else {
+            listings.invalidateAll();
+        }
+        synchronized (this) {
+            if (pending == null) {
+                pending = new PendingChange();
+            }
+            pending.add(event.productIds(), event.stockOnly(), maxLoggedIds);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.cache.catalog.version-poll-interval-ms:1000}")
+    public void poll() {
+        if (listingsStale.getAndSet(false)) {
+            listings.invalidateAll();
+        }
+        PendingChange change;
+        synchronized (this) {
+            change = pending;
+            pending = null;
+        }
+        try {
+            // {counter, value of our own bump or -1}
+            long[] versions = transactionTemplate.execute(status -> {
+                long own = -1;
+                if (change != null) {
+                    if (versionRepository.increment(CACHE_NAME, LocalDateTime.now()) == 0) {
+                        versionRepository.save(new CacheVersion(CACHE_NAME, 1, LocalDateTime.now()));
+                    }
+                    own = readVersion();
+                    changeRepository.insert(own, change.productIdsText(), change.stockOnly);
+                    changeRepository.deleteUpTo(own - changeLogSize);
+                }
+                return new long[]{readVersion(), own};
+            });
+            long current = versions[0];
+            long own = versions[1];
+            long previous = seenVersion;
+            // Our own bump moves the counter by exactly one; anything else came from another node. The caches
+            // are dropped before the new listing ETag is published, so it is never paired with an older body.
+            long foreign = current - previous - (own >= 0 ? 1 : 0);
+            if (previous >= 0 && foreign > 0) {
+                applyRemoteChanges(previous, current, own, foreign);
+            }
+            seenVersion = current;
+        } catch (RuntimeException e) {
+            if (change != null) {
+                synchronized (this) {
+                    if (pending == null) {
+                        pending = change;
+                    } else {
+                        pending.merge(change, maxLoggedIds);
+                    }
+                }
+            }
+            System.err.println("Catalog version poll failed: " + e.getMessage());
+        }
+    }
+
+    private void applyRemoteChanges(long previous, long current, long own, long foreign) {
+        Set<Long> productIds = new HashSet<>();
+        boolean stockOnly = true;
+        int found = 0;
+        boolean everything = false;
+        for (CatalogChange change : changeRepository.findByVersionBetween(previous + 1, current)) {
+            if (change.getVersion() == own) {
+                continue;
+            }
+            found++;
+            if (change.getProductIds() == null) {
+                everything = true;
+                break;
+            }
+            for (String id : change.getProductIds().split(",")) {
+                productIds.add(Long.parseLong(id));
+            }
+            stockOnly &= change.isStockOnly();
+        }
+        listings.invalidateAll();
+        if (everything || found != foreign || productIds.isEmpty()) {
+            // A change to any product, or versions already trimmed from the log
+            products.invalidateAll();
+            eventPublisher.publishEvent(CatalogChangedEvent.remote());
+            return;
+        }
+        products.invalidateAll(productIds);
+        eventPublisher.publishEvent(CatalogChangedEvent.remote(productIds, stockOnly));
+    }
+
+    // Product ids and kind of the local changes since the last bump; too many ids are logged as "any product"
+    private static final class PendingChange {
+
+        private Set<Long> productIds = new HashSet<>();
+        private boolean stockOnly = true;
+
+        void add(Set<Long> ids, boolean stock, int maxIds) {
+            stockOnly &= stock;
+            if (productIds != null && !ids.isEmpty()) {
+                productIds.addAll(ids);
+            }
+            if (ids.isEmpty() || productIds != null && productIds.size() > maxIds) {
+                productIds = null;
+            }
+        }
+
+        void merge(PendingChange other, int maxIds) {
+            add(other.productIds != null ? other.productIds : Set.of(), other.stockOnly, maxIds);
+        }
+
+        String productIdsText() {
+            if (productIds == null) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder();
+            for (Long id : productIds) {
+                if (text.length() > 0) {
+                    text.append(',');
+                }
+                text.append(id);
+            }
+            return text.toString();
+        }
+    }
+
+    private long readVersion() {
+        return versionRepository.findById(CACHE_NAME).map(CacheVersion::getVersion).orElse(0L);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", seenVersion);
+        result.put("products", stats(products));
+        result.put("listings", stats(listings));
+        return result;
+    }
+
+    private static Map<String, Object> stats(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("averageLoadMillis", stats.averageLoadPenalty() / 1_000_000.0);
+        return result;
+    }
+}
@@ -0,0 +1,416 @@
+package com.zenbuy.service;
+
+import com.zenbuy.dto.ProductSummary;
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.IntStream;
+
+// Columnar copy of the catalog for sidebar facets: one row per product with primitive arrays for category
+// ordinal, price and stock. Queries filter and count in one pass over the columns, split across the common
+// pool for large catalogs, and read under an optimistic StampedLock stamp so writers never block them.
+// Deleted products leave a tombstone row until the next rebuild; products without a category are not counted. Maintenance mirrors ProductSearchIndex:
+// product edits apply on arrival, stock-only changes on the next tick, a change to any product rebuilds in the background.
+@Service
+@Profile("dev")
+public class ProductFacetIndex {
+
+    private static final int LOAD_CHUNK = 5000;
+    private static final int PARALLEL_CHUNK = 32768;
+    private static final int DELETED = -1;
+
+    public record CategoryCount(String category, int count, int inStock) {
+    }
+
+    // from is null for the bucket below the first edge, to is null for the last bucket
+    public record PriceBucket(Double from, Double to, int count, int inStock) {
+    }
+
+    public record Facets(int total, int inStock, List<CategoryCount> categories, List<PriceBucket> priceBuckets) {
+    }
+
+    // Arrays are replaced, never shrunk, when the catalog outgrows them
+    private static final class Columns {
+        final long[] ids;
+        final int[] categories;
+        final double[] prices;
+        final int[] stock;
+        final int size;
+
+        Columns(int capacity, int size) {
+            this(new long[capacity], new int[capacity], new double[capacity], new int[capacity], size);
+        }
+
+        Columns(long[] ids, int[] categories, double[] prices, int[] stock, int size) {
+            this.ids = ids;
+            this.categories = categories;
+            this.prices = prices;
+            this.stock = stock;
+            this.size = size;
+        }
+    }
+
+    // Per-thread partial counts: index 0..n-1 by category ordinal or price bucket
+    private static final class Counts {
+        int total;
+        int inStock;
+        final int[] categoryCount;
+        final int[] categoryInStock;
+        final int[] bucketCount;
+        final int[] bucketInStock;
+
+        Counts(int categories, int buckets) {
+            categoryCount = new int[categories];
+            categoryInStock = new int[categories];
+            bucketCount = new int[buckets];
+            bucketInStock = new int[buckets];
+        }
+
+        Counts merge(Counts other) {
+            total += other.total;
+            inStock += other.inStock;
+            for (int i = 0; i < categoryCount.length; i++) {
+                categoryCount[i] += other.categoryCount[i];
+                categoryInStock[i] += other.categoryInStock[i];
+            }
+            for (int i = 0; i < bucketCount.length; i++) {
+                bucketCount[i] += other.bucketCount[i];
+                bucketInStock[i] += other.bucketInStock[i];
+            }
+            return this;
+        }
+    }
+
+    private final ProductRepository productRepository;
+    private final double[] bucketEdges;
+    private final StampedLock lock = new StampedLock();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-facet-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding;
+
+    // Guarded by lock
+    private Columns columns = new Columns(0, 0);
+    private Map<Long, Integer> rows = new HashMap<>();
+    private List<String> categoryNames = new ArrayList<>();
+    private Map<String, Integer> categoryOrdinals = new HashMap<>();
+
+    public ProductFacetIndex(ProductRepository productRepository,
+                             @Value("${zenbuy.facets.price-buckets:0,500,1000,2500,5000,10000}") double[] bucketEdges) {
+        this.productRepository = productRepository;
+        this.bucketEdges = bucketEdges.clone();
+        Arrays.sort(this.bucketEdges);
+    }
+
+    // Category counts apply the price and stock filters; totals and price buckets also apply the category
+    public Facets facets(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new RuntimeException("minPrice must not be greater than maxPrice");
+        }
+        long stamp = lock.tryOptimisticRead();
+        Facets facets = null;
+        if (stamp != 0) {
+            try {
+                facets = compute(category, minPrice, maxPrice, inStockOnly);
+            } catch (RuntimeException e) {
+                // A writer moved the columns mid-scan; validate fails below and the read lock is taken
+            }
+        }
+        if (facets == null || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                facets = compute(category, minPrice, maxPrice, inStockOnly);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return facets;
+    }
+
+    private Facets compute(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        Columns current = columns;
+        List<String> names = categoryNames;
+        Integer ordinal = category != null && !category.isEmpty() ? categoryOrdinals.get(category) : null;
+        if (category != null && !category.isEmpty() && ordinal == null) {
+            ordinal = Integer.MIN_VALUE; // unknown category: no totals, but still count the others
+        }
+        int categoryFilter = ordinal != null ? ordinal : DELETED;
+        double min = minPrice != null ? minPrice : Double.NEGATIVE_INFINITY;
+        double max = maxPrice != null ? maxPrice : Double.POSITIVE_INFINITY;
+        int categories = names.size();
+        int size = Math.min(current.size, current.ids.length);
+
+        Counts counts;
+        if (size <= PARALLEL_CHUNK) {
+            counts = scan(current, 0, size, categories, categoryFilter, min, max, inStockOnly);
+        } else {
+            int chunks = (size + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            counts = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> scan(current, chunk * PARALLEL_CHUNK, Math.min(size, (chunk + 1) * PARALLEL_CHUNK),
+                            categories, categoryFilter, min, max, inStockOnly))
+                    .reduce(Counts::merge)
+                    .orElseGet(() -> new Counts(categories, bucketEdges.length + 1));
+        }
+
+        List<CategoryCount> categoryCounts = new ArrayList<>();
+        for (int i = 0; i < categories && i < names.size(); i++) {
+            if (counts.categoryCount[i] > 0) {
+                categoryCounts.add(new CategoryCount(names.get(i), counts.categoryCount[i], counts.categoryInStock[i]));
+            }
+        }
+        categoryCounts.sort(Comparator.comparing(CategoryCount::category));
+        List<PriceBucket> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.bucketCount.length; i++) {
+            if (i == 0 && counts.bucketCount[0] == 0) {
+                continue; // with the default edges only negative prices land below the first one
+            }
+            buckets.add(new PriceBucket(i > 0 ? bucketEdges[i - 1] : null, i < bucketEdges.length ? bucketEdges[i] : null,
+                    counts.bucketCount[i], counts.bucketInStock[i]));
+        }
+        return new Facets(counts.total, counts.inStock, categoryCounts, buckets);
+    }
+
+    private Counts scan(Columns current, int from, int to, int categories, int categoryFilter,
+                        double min, double max, boolean inStockOnly) {
+        Counts counts = new Counts(categories, bucketEdges.length + 1);
+        int[] categoryColumn = current.categories;
+        double[] priceColumn = current.prices;
+        int[] stockColumn = current.stock;
+        for (int row = from; row < to; row++) {
+            int category = categoryColumn[row];
+            double price = priceColumn[row];
+            if (category == DELETED || category >= categories || price < min || price > max) {
+                continue;
+            }
+            boolean inStock = stockColumn[row] > 0;
+            if (inStockOnly && !inStock) {
+                continue;
+            }
+            counts.categoryCount[category]++;
+            if (inStock) {
+                counts.categoryInStock[category]++;
+            }
+            if (categoryFilter != DELETED && category != categoryFilter) {
+                continue;
+            }
+            counts.total++;
+            int bucket = bucketOf(price);
+            counts.bucketCount[bucket]++;
+            if (inStock) {
+                counts.inStock++;
+                counts.bucketInStock[bucket]++;
+            }
+        }
+        return counts;
+    }
+
+    // Bucket 0 is below the first edge; bucket i holds [edges[i-1], edges[i])
+    private int bucketOf(double price) {
+        int index = Arrays.binarySearch(bucketEdges, price);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        requestRebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (event.productIds().isEmpty()) {
+            requestRebuild();
+            return;
+        }
+        if (event.stockOnly()) {
+            dirty.addAll(event.productIds());
+            return;
+        }
+        refresh(event.productIds());
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.search.refresh-interval-ms:1000}")
+    public void refreshDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            refresh(ids);
+        } catch (RuntimeException e) {
+            dirty.addAll(ids);
+            System.err.println("Facet index refresh failed: " + e.getMessage());
+        }
+    }
+
+    // Serialized like ProductSearchIndex.refresh: the products are read before the write lock is taken, so two
+    // refreshes of the same product could otherwise apply their reads in the wrong order
+    private synchronized void refresh(Collection<Long> productIds) {
+        if (rebuilding) {
+            changedDuringRebuild.addAll(productIds);
+        }
+        List<ProductSummary> found = new ArrayList<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            found.add(ProductSummary.from(product));
+        }
+        Set<Long> missing = new HashSet<>(productIds);
+        long stamp = lock.writeLock();
+        try {
+            for (ProductSummary product : found) {
+                missing.remove(product.id());
+                Integer row = rows.get(product.id());
+                if (row == null) {
+                    row = appendRow(product.id());
+                }
+                columns.categories[row] = ordinalOf(product.category());
+                columns.prices[row] = product.price();
+                columns.stock[row] = product.stockQuantity();
+            }
+            for (Long productId : missing) {
+                Integer row = rows.remove(productId);
+                if (row != null) {
+                    columns.categories[row] = DELETED;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Caller holds the write lock
+    private int appendRow(Long productId) {
+        Columns current = columns;
+        if (current.size == current.ids.length) {
+            int capacity = Math.max(16, current.ids.length * 2);
+            current = new Columns(Arrays.copyOf(current.ids, capacity), Arrays.copyOf(current.categories, capacity),
+                    Arrays.copyOf(current.prices, capacity), Arrays.copyOf(current.stock, capacity), current.size);
+        }
+        int row = current.size;
+        columns = new Columns(current.ids, current.categories, current.prices, current.stock, row + 1);
+        columns.ids[row] = productId;
+        columns.categories[row] = DELETED;
+        rows.put(productId, row);
+        return row;
+    }
+
+    // Caller holds the write lock. Ordinals only grow, so a new category never renumbers the others.
+    private int ordinalOf(String category) {
+        if (category == null) {
+            return DELETED;
+        }
+        Integer ordinal = categoryOrdinals.get(category);
+        if (ordinal == null) {
+            List<String> names = new ArrayList<>(categoryNames);
+            names.add(category);
+            Map<String, Integer> ordinals = new HashMap<>(categoryOrdinals);
+            ordinal = names.size() - 1;
+            ordinals.put(category, ordinal);
+            categoryNames = names;
+            categoryOrdinals = ordinals;
+        }
+        return ordinal;
+    }
+
+    public void requestRebuild() {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildQueued.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    System.err.println("Facet index rebuild failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    // Loads summaries in id-ordered chunks into fresh columns, then swaps them in
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        rebuilding = true;
+        changedDuringRebuild.clear();
+        int loaded;
+        try {
+            List<ProductSummary> products = new ArrayList<>();
+            List<ProductSummary> chunk;
+            long lastId = 0;
+            do {
+                chunk = productRepository.findSummariesAfter(null, null, null, lastId, Limit.of(LOAD_CHUNK));
+                products.addAll(chunk);
+                if (!chunk.isEmpty()) {
+                    lastId = chunk.get(chunk.size() - 1).id();
+                }
+            } while (chunk.size() == LOAD_CHUNK);
+
+            Columns built = new Columns(Math.max(16, products.size() + products.size() / 4), products.size());
+            Map<Long, Integer> builtRows = new HashMap<>(products.size() * 2);
+            List<String> names = new ArrayList<>();
+            Map<String, Integer> ordinals = new HashMap<>();
+            for (int row = 0; row < products.size(); row++) {
+                ProductSummary product = products.get(row);
+                built.ids[row] = product.id();
+                built.categories[row] = product.category() == null ? DELETED
+                        : ordinals.computeIfAbsent(product.category(), name -> {
+                            names.add(name);
+                            return names.size() - 1;
+                        });
+                built.prices[row] = product.price();
+                built.stock[row] = product.stockQuantity();
+                builtRows.put(product.id(), row);
+            }
+            long stamp = lock.writeLock();
+            try {
+                columns = built;
+                rows = builtRows;
+                categoryNames = names;
+                categoryOrdinals = ordinals;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            loaded = products.size();
+        } finally {
+            rebuilding = false;
+        }
+        // Edits that raced with the load are applied again to the new columns
+        if (!changedDuringRebuild.isEmpty()) {
+            List<Long> ids = new ArrayList<>(changedDuringRebuild);
+            changedDuringRebuild.removeAll(ids);
+            refresh(ids);
+        }
+        System.out.println("Product facet index rebuilt: " + loaded + " products in "
+                + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    @PreDestroy
+    public void stop() {
+        rebuildExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,467 @@
+package com.zenbuy.service;
+
+import com.zenbuy.dto.ProductSummary;
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// In-memory inverted index over product name, category and description. Every query token matches terms
+// it is a prefix of (exact matches score higher), all tokens must match, and hits are ranked by field
+// weight times idf. Posting lists are immutable arrays replaced on write, so queries never lock.
+// Product edits, local or from another node, are applied as soon as they arrive; stock-only changes are
+// batched per tick, and startup or a change to any product rebuilds the whole index in the background.
+@Service
+@Profile("dev")
+public class ProductSearchIndex {
+
+    private static final int LOAD_CHUNK = 5000;
+    private static final int MAX_RESULTS = 100;
+    private static final float NAME_WEIGHT = 3f;
+    private static final float CATEGORY_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    private static final float PREFIX_FACTOR = 0.5f;
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "for", "in", "of", "on", "or", "the", "to", "with");
+
+    public record SearchResults(String query, int total, List<ProductSummary> items) {
+    }
+
+    private record Doc(ProductSummary summary, Map<String, Float> terms) {
+    }
+
+    // Sorted by product id; never mutated once published
+    private record Postings(long[] ids, float[] weights) {
+
+        Postings with(long id, float weight) {
+            int index = Arrays.binarySearch(ids, id);
+            if (index >= 0) {
+                float[] newWeights = weights.clone();
+                newWeights[index] = weight;
+                return new Postings(ids, newWeights);
+            }
+            int insert = -index - 1;
+            long[] newIds = new long[ids.length + 1];
+            float[] newWeights = new float[ids.length + 1];
+            System.arraycopy(ids, 0, newIds, 0, insert);
+            System.arraycopy(weights, 0, newWeights, 0, insert);
+            newIds[insert] = id;
+            newWeights[insert] = weight;
+            System.arraycopy(ids, insert, newIds, insert + 1, ids.length - insert);
+            System.arraycopy(weights, insert, newWeights, insert + 1, ids.length - insert);
+            return new Postings(newIds, newWeights);
+        }
+
+        Postings without(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            if (index < 0) {
+                return this;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            long[] newIds = new long[ids.length - 1];
+            float[] newWeights = new float[ids.length - 1];
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(weights, 0, newWeights, 0, index);
+            System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+            System.arraycopy(weights, index + 1, newWeights, index, ids.length - index - 1);
+            return new Postings(newIds, newWeights);
+        }
+    }
+
+    private static final class Index {
+        final ConcurrentHashMap<Long, Doc> docs = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    }
+
+    private final ProductRepository productRepository;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding;
+    private volatile Index index = new Index();
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    public SearchResults search(String query, Integer limit) {
+        int max = Math.min(Math.max(limit != null ? limit : 20, 1), MAX_RESULTS);
+        List<String> tokens = new ArrayList<>(new HashSet<>(tokenize(query)));
+        if (tokens.isEmpty()) {
+            return new SearchResults(query, 0, List.of());
+        }
+        Index current = index;
+        int docCount = Math.max(current.docs.size(), 1);
+
+        // Score each token on its own, then intersect, starting from the rarest token
+        List<Hits> perToken = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Hits hits = scoreToken(current, token, docCount);
+            if (hits.size() == 0) {
+                return new SearchResults(query, 0, List.of());
+            }
+            perToken.add(hits);
+        }
+        perToken.sort(Comparator.comparingInt(Hits::size));
+        Hits hits = perToken.get(0);
+        for (int i = 1; i < perToken.size() && hits.size() > 0; i++) {
+            hits = intersect(hits, perToken.get(i));
+        }
+
+        int[] top = topK(hits, max);
+        List<ProductSummary> items = new ArrayList<>(top.length);
+        for (int hit : top) {
+            Doc doc = current.docs.get(hits.ids()[hit]);
+            if (doc != null) {
+                items.add(doc.summary());
+            }
+        }
+        return new SearchResults(query, hits.size(), items);
+    }
+
+    // Matching product ids in ascending order; the score of hit i is scores[i] * factor
+    private record Hits(long[] ids, float[] scores, int size, float factor) {
+
+        float score(int i) {
+            return scores[i] * factor;
+        }
+    }
+
+    // Union of every term the token is a prefix of, keeping each product's best score. No term is left out,
+    // however short the prefix, so the intersected total is the exact number of matching products.
+    private Hits scoreToken(Index current, String token, int docCount) {
+        List<Postings> lists = new ArrayList<>();
+        List<Float> factors = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Postings> match : current.terms.subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+            Postings postings = match.getValue();
+            float idf = (float) Math.log(1.0 + (double) docCount / postings.ids().length);
+            lists.add(postings);
+            factors.add(match.getKey().equals(token) ? idf : idf * PREFIX_FACTOR);
+            total += postings.ids().length;
+        }
+        if (lists.size() == 1) {
+            // Posting arrays are immutable, so a single term is used as is
+            return new Hits(lists.get(0).ids(), lists.get(0).weights(), total, factors.get(0));
+        }
+        long[] ids = new long[total];
+        float[] scores = new float[total];
+        // k-way merge of the sorted posting lists
+        int[] positions = new int[lists.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(lists.size(), 1),
+                Comparator.comparingLong(list -> lists.get(list).ids()[positions[list]]));
+        for (int list = 0; list < lists.size(); list++) {
+            heads.offer(list);
+        }
+        int size = 0;
+        while (!heads.isEmpty()) {
+            int list = heads.poll();
+            Postings postings = lists.get(list);
+            long id = postings.ids()[positions[list]];
+            float score = postings.weights()[positions[list]] * factors.get(list);
+            if (size > 0 && ids[size - 1] == id) {
+                scores[size - 1] = Math.max(scores[size - 1], score);
+            } else {
+                ids[size] = id;
+                scores[size++] = score;
+            }
+            if (++positions[list] < postings.ids().length) {
+                heads.offer(list);
+            }
+        }
+        return new Hits(ids, scores, size, 1f);
+    }
+
+    // Products present in both, scores summed; gallops through the larger side when sizes differ a lot
+    private static Hits intersect(Hits small, Hits large) {
+        long[] ids = new long[small.size()];
+        float[] scores = new float[small.size()];
+        int size = 0;
+        boolean gallop = large.size() > small.size() * 8;
+        int j = 0;
+        for (int i = 0; i < small.size() && j < large.size(); i++) {
+            long id = small.ids()[i];
+            if (gallop) {
+                int found = Arrays.binarySearch(large.ids(), j, large.size(), id);
+                j = found >= 0 ? found : -found - 1;
+            } else {
+                while (j < large.size() && large.ids()[j] < id) {
+                    j++;
+                }
+            }
+            if (j < large.size() && large.ids()[j] == id) {
+                ids[size] = id;
+                scores[size++] = small.score(i) + large.score(j);
+            }
+        }
+        return new Hits(ids, scores, size, 1f);
+    }
+
+    // Indexes of the best max hits, best first, using a bounded min-heap on the scores
+    private static int[] topK(Hits hits, int max) {
+        int[] heap = new int[Math.min(max, hits.size())];
+        int size = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(hits, heap, size++);
+            } else if (better(hits, i, heap[0])) {
+                heap[0] = i;
+                siftDown(hits, heap, size);
+            }
+        }
+        // Pop the minimum repeatedly, filling the result from the back
+        int[] result = new int[size];
+        for (int end = size - 1; end >= 0; end--) {
+            result[end] = heap[0];
+            heap[0] = heap[end];
+            siftDown(hits, heap, end);
+        }
+        return result;
+    }
+
+    // Higher score wins; equal scores rank the lower product id first
+    private static boolean better(Hits hits, int a, int b) {
+        float scoreA = hits.score(a);
+        float scoreB = hits.score(b);
+        return scoreA != scoreB ? scoreA > scoreB : hits.ids()[a] < hits.ids()[b];
+    }
+
+    private static void siftUp(Hits hits, int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(hits, heap[parent], heap[index])) {
+                return;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[index];
+            heap[index] = swap;
+            index = parent;
+        }
+    }
+
+    private static void siftDown(Hits hits, int[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && better(hits, heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!better(hits, heap[index], heap[child])) {
+                return;
+            }
+            int swap = heap[child];
+            heap[child] = heap[index];
+            heap[index] = swap;
+            index = child;
+        }
+    }
+
+    public int size() {
+        return index.docs.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        requestRebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (event.productIds().isEmpty()) {
+            requestRebuild();
+            return;
+        }
+        if (event.stockOnly()) {
+            dirty.addAll(event.productIds());
+            return;
+        }
+        refresh(event.productIds());
+    }
+
+    @Scheduled(fixedDelayString = "${zenbuy.search.refresh-interval-ms:1000}")
+    public void refreshDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            refresh(ids);
+        } catch (RuntimeException e) {
+            dirty.addAll(ids);
+            System.err.println("Search index refresh failed: " + e.getMessage());
+        }
+    }
+
+    private synchronized void refresh(Collection<Long> productIds) {
+        if (rebuilding) {
+            changedDuringRebuild.addAll(productIds);
+        }
+        Index current = index;
+        Set<Long> missing = new HashSet<>(productIds);
+        for (Product product : productRepository.findAllById(productIds)) {
+            missing.remove(product.getId());
+            Doc doc = toDoc(product);
+            Doc previous = current.docs.put(product.getId(), doc);
+            if (previous == null || !previous.terms().equals(doc.terms())) {
+                if (previous != null) {
+                    unindex(current, product.getId(), previous);
+                }
+                for (Map.Entry<String, Float> term : doc.terms().entrySet()) {
+                    current.terms.compute(term.getKey(), (key, postings) -> postings == null
+                            ? new Postings(new long[]{product.getId()}, new float[]{term.getValue()})
+                            : postings.with(product.getId(), term.getValue()));
+                }
+            }
+        }
+        for (Long productId : missing) {
+            Doc previous = current.docs.remove(productId);
+            if (previous != null) {
+                unindex(current, productId, previous);
+            }
+        }
+    }
+
+    private void unindex(Index current, Long productId, Doc doc) {
+        for (String term : doc.terms().keySet()) {
+            current.terms.computeIfPresent(term, (key, postings) -> postings.without(productId));
+        }
+    }
+
+    public void requestRebuild() {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildQueued.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    System.err.println("Search index rebuild failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    // Loads the catalog in id-ordered chunks, then tokenizes and builds the posting lists in parallel
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        rebuilding = true;
+        changedDuringRebuild.clear();
+        try {
+            List<Product> products = new ArrayList<>();
+            List<Product> chunk;
+            long lastId = 0;
+            do {
+                chunk = productRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(LOAD_CHUNK));
+                products.addAll(chunk);
+                if (!chunk.isEmpty()) {
+                    lastId = chunk.get(chunk.size() - 1).getId();
+                }
+            } while (chunk.size() == LOAD_CHUNK);
+
+            Index built = new Index();
+            List<Doc> docs = products.parallelStream().map(ProductSearchIndex::toDoc).toList();
+            docs.forEach(doc -> built.docs.put(doc.summary().id(), doc));
+            Map<String, List<Doc>> byTerm = docs.parallelStream()
+                    .flatMap(doc -> doc.terms().keySet().stream().map(term -> Map.entry(term, doc)))
+                    .collect(Collectors.groupingByConcurrent(Map.Entry::getKey,
+                            Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+            byTerm.entrySet().parallelStream().forEach(entry -> {
+                List<Doc> termDocs = new ArrayList<>(entry.getValue());
+                termDocs.sort(Comparator.comparing(doc -> doc.summary().id()));
+                long[] ids = new long[termDocs.size()];
+                float[] weights = new float[termDocs.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = termDocs.get(i).summary().id();
+                    weights[i] = termDocs.get(i).terms().get(entry.getKey());
+                }
+                built.terms.put(entry.getKey(), new Postings(ids, weights));
+            });
+            index = built;
+        } finally {
+            rebuilding = false;
+        }
+        // Edits that raced with the load are applied again to the new index
+        if (!changedDuringRebuild.isEmpty()) {
+            List<Long> ids = new ArrayList<>(changedDuringRebuild);
+            changedDuringRebuild.removeAll(ids);
+            refresh(ids);
+        }
+        System.out.println("Product search index rebuilt: " + index.docs.size() + " products, "
+                + index.terms.size() + " terms in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    @PreDestroy
+    public void stop() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    private static Doc toDoc(Product product) {
+        Map<String, Float> terms = new HashMap<>();
+        addTerms(terms, product.getName(), NAME_WEIGHT);
+        addTerms(terms, product.getCategory(), CATEGORY_WEIGHT);
+        addTerms(terms, product.getDescription(), DESCRIPTION_WEIGHT);
+        return new Doc(ProductSummary.from(product), terms);
+    }
+
+    private static void addTerms(Map<String, Float> terms, String text, float weight) {
+        for (String token : new HashSet<>(tokenize(text))) {
+            terms.merge(token, weight, Float::sum);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = lower.substring(start, i);
+                if (!STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,30 +1,113 @@
 package com.zenbuy.service;
 
+import com.zenbuy.dto.ProductSummary;
 import com.zenbuy.model.Product;
 import com.zenbuy.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.context.annotation.Profile;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Profile("dev")
 public class ProductService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // Allowed values of ?sort=; every order ends on id so pages are stable
+    private static final Map<String, Sort> SORTS = Map.of(
+            "id", Sort.by("id"),
+            "newest", Sort.by(Sort.Direction.DESC, "id"),
+            "price_asc", Sort.by("price", "id"),
+            "price_desc", Sort.by(Sort.Direction.DESC, "price", "id"),
+            "name", Sort.by("name", "id"));
+
     private final ProductRepository repo;
+    private final InventoryReservationEngine inventoryEngine;
+    private final ProductCatalogCache catalogCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int listingPageSize;
 
-    public ProductService(ProductRepository repo) {
+    public ProductService(ProductRepository repo, InventoryReservationEngine inventoryEngine,
+                          ProductCatalogCache catalogCache, ApplicationEventPublisher eventPublisher,
+                          @Value("${zenbuy.products.page-size:24}") int listingPageSize) {
         this.repo = repo;
+        this.inventoryEngine = inventoryEngine;
+        this.catalogCache = catalogCache;
+        this.eventPublisher = eventPublisher;
+        this.listingPageSize = listingPageSize;
     }
 
     public List<Product> getAllProducts() {
-        return repo.findAll();
+        return catalogCache.getListing(List.of("all"), () -> List.copyOf(repo.findAll()));
+    }
+
+    public List<Product> getProductsByCategory(String category) {
+        return catalogCache.getListing(List.of("category", category), () -> List.copyOf(repo.findByCategoryOrderByIdAsc(category)));
+    }
+
+    // One page of the catalog. The default id order pages by keyset (cursor); other sorts page by number.
+    public ProductPage getProductPage(Integer page, Integer size, String cursor, String category,
+                                      Double minPrice, Double maxPrice, String sort) {
+        return catalogCache.getListing(Arrays.asList("page", page, size, cursor, category, minPrice, maxPrice, sort),
+                () -> loadProductPage(page, size, cursor, category, minPrice, maxPrice, sort));
+    }
+
+    private ProductPage loadProductPage(Integer page, Integer size, String cursor, String category,
+                                        Double minPrice, Double maxPrice, String sort) {
+        int pageSize = Math.min(Math.max(size != null ? size : listingPageSize, 1), MAX_PAGE_SIZE);
+        String sortKey = sort != null && !sort.isEmpty() ? sort : "id";
+        Sort order = SORTS.get(sortKey);
+        if (order == null) {
+            throw new RuntimeException("Invalid sort. Allowed: " + SORTS.keySet());
+        }
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new RuntimeException("minPrice must not be greater than maxPrice");
+        }
+        String filterCategory = category != null && !category.isEmpty() ? category : null;
+
+        if (page == null && sortKey.equals("id")) {
+            Long afterId = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor) : 0L;
+            List<ProductSummary> items = repo.findSummariesAfter(filterCategory, minPrice, maxPrice, afterId,
+                    Limit.of(pageSize + 1));
+            String nextCursor = null;
+            if (items.size() > pageSize) {
+                items = new ArrayList<>(items.subList(0, pageSize));
+                nextCursor = encodeCursor(items.get(pageSize - 1).id());
+            }
+            return new ProductPage(items, null, nextCursor != null, nextCursor);
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            throw new RuntimeException("cursor can only be used with the default sort and without page");
+        }
+        int pageNumber = Math.max(page != null ? page : 0, 0);
+        Slice<ProductSummary> slice = repo.findSummaries(filterCategory, minPrice, maxPrice,
+                PageRequest.of(pageNumber, pageSize, order));
+        return new ProductPage(slice.getContent(), pageNumber, slice.hasNext(), null);
     }
 
     public Product addProduct(Product product) {
-        return repo.save(product);
+        Product saved = repo.save(product);
+        if (saved.isHot()) {
+            inventoryEngine.reload(saved.getId());
+        }
+        eventPublisher.publishEvent(CatalogChangedEvent.productsChanged(saved.getId()));
+        return saved;
     }
 
+    // Full replacement. A version in the body must match the stored one, otherwise the save fails with an
+    // optimistic locking exception instead of overwriting a change the client has not seen.
     public Product updateProduct(Long id, Product product) {
         Product existingProduct = repo.findById(id)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
@@ -34,20 +117,120 @@ public class ProductService {
         existingProduct.setPrice(product.getPrice());
         existingProduct.setImageUrl(product.getImageUrl());
         existingProduct.setCategory(product.getCategory());
+        checkHeldStock(existingProduct, product.getStockQuantity());
         existingProduct.setStockQuantity(product.getStockQuantity());
+        boolean wasHot = existingProduct.isHot();
+        existingProduct.setHot(product.isHot());
+        if (product.getVersion() != null) {
+            existingProduct.setVersion(product.getVersion());
+        }
         
-        return repo.save(existingProduct);
+        return saved(id, wasHot, repo.save(existingProduct));
+    }
+
+    // Partial update: only the fields present in the patch are changed, and with @DynamicUpdate only those
+    // columns are written. The merge still checks the version, so a patch based on a stale read (or one
+    // that raced a checkout) fails rather than writing back an old stock level.
+    public Product patchProduct(Long id, ProductPatch patch) {
+        Product existingProduct = repo.findById(id)
+                .orElseThrow(() -> new RuntimeException("Product not found"));
+        boolean wasHot = existingProduct.isHot();
+
+        if (patch.name() != null) {
+            existingProduct.setName(patch.name());
+        }
+        if (patch.description() != null) {
+            existingProduct.setDescription(patch.description());
+        }
+        if (patch.price() != null) {
+            existingProduct.setPrice(patch.price());
+        }
+        if (patch.imageUrl() != null) {
+            existingProduct.setImageUrl(patch.imageUrl());
+        }
+        if (patch.category() != null) {
+            existingProduct.setCategory(patch.category());
+        }
+        if (patch.stockQuantity() != null) {
+            if (patch.stockQuantity() < 0) {
+                throw new RuntimeException("stockQuantity must not be negative");
+            }
+            checkHeldStock(existingProduct, patch.stockQuantity());
+            existingProduct.setStockQuantity(patch.stockQuantity());
+        }
+        if (patch.hot() != null) {
+            existingProduct.setHot(patch.hot());
+        }
+        if (patch.version() != null) {
+            existingProduct.setVersion(patch.version());
+        }
+
+        return saved(id, wasHot, repo.save(existingProduct));
+    }
+
+    // Units held in hot-stock slices may already be sold by checkout nodes. Claiming units bumps the
+    // version, so a save based on this read fails if a node claimed more in the meantime.
+    private static void checkHeldStock(Product product, Integer stockQuantity) {
+        if (stockQuantity != null && stockQuantity < product.getHeldStock()) {
+            throw new RuntimeException("stockQuantity must not be below the " + product.getHeldStock()
+                    + " units held by checkout nodes");
+        }
+    }
+
+    private Product saved(Long id, boolean wasHot, Product saved) {
+        // Keep the in-memory counter in step with the new stock level or hot flag
+        if (wasHot || saved.isHot()) {
+            inventoryEngine.reload(id);
+        }
+        eventPublisher.publishEvent(CatalogChangedEvent.productsChanged(id));
+        return saved;
     }
 
     public void deleteProduct(Long id) {
-        if (!repo.existsById(id)) {
+        if (!repo.deleteWithInventory(id)) {
             throw new RuntimeException("Product not found");
         }
-        repo.deleteById(id);
+        if (inventoryEngine.isHot(id)) {
+            inventoryEngine.reload(id);
+        }
+        eventPublisher.publishEvent(CatalogChangedEvent.productsChanged(id));
+    }
+
+    // Taken before the data is read, so a concurrent change can only make the ETag older than the body
+    public String getListingETag() {
+        return catalogCache.listingETag();
+    }
+
+    public String getProductETag(Product product) {
+        return catalogCache.productETag(product);
     }
 
     public Product getProductById(Long id) {
-        return repo.findById(id)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
+        Product product = catalogCache.getProduct(id, key -> repo.findById(key).orElse(null));
+        if (product == null) {
+            throw new RuntimeException("Product not found");
+        }
+        return product;
+    }
+
+    public record ProductPage(List<ProductSummary> items, Integer page, boolean hasNext, String nextCursor) {
+    }
+
+    // Body of PATCH /api/products/{id}; null fields are left unchanged
+    public record ProductPatch(String name, String description, Double price, String imageUrl, String category,
+                               Integer stockQuantity, Boolean hot, Long version) {
+    }
+
+    // Opaque keyset cursor: the id of the last product on the previous page
+    private static String encodeCursor(Long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
     }
 }
@@ -0,0 +1,78 @@
+package com.zenbuy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Snowflake-style ids: 41 bits of milliseconds since 2024-01-01, 10 bits of node id and a 12-bit per-node
+// sequence, rendered as fixed-width base 36 so the strings sort in creation order.
+// The millisecond and sequence live in one AtomicLong and advance with a CAS, so no lock is taken. When
+// the sequence overflows or the clock steps back, the generator borrows the next millisecond instead of
+// waiting, which keeps numbers unique and increasing.
+@Service
+@Profile("dev")
+public class SnowflakeOrderNumberGenerator implements OrderNumberGenerator {
+
+    private static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final int WIDTH = 13; // base 36 digits needed for a positive 63-bit value
+
+    private final long nodeId;
+    // (milliseconds since EPOCH << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeOrderNumberGenerator(@Value("${zenbuy.node-id:-1}") long nodeId) {
+        // Masking an out-of-range id would silently reuse another node's id and duplicate order numbers
+        if (nodeId < -1 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("zenbuy.node-id must be between 0 and " + MAX_NODE_ID + ", was " + nodeId);
+        }
+        if (nodeId >= 0) {
+            this.nodeId = nodeId;
+        } else {
+            this.nodeId = hostNodeId();
+            System.err.println("WARNING: zenbuy.node-id is not set, using " + this.nodeId + " derived from the host name. "
+                    + "Two hosts can hash to the same id and then issue duplicate order numbers; set zenbuy.node-id "
+                    + "to a distinct value on every node when more than one instance runs.");
+        }
+        System.out.println("Order number generator node id: " + this.nodeId);
+    }
+
+    @Override
+    public String nextOrderNumber() {
+        return "ORD-" + encode(nextId());
+    }
+
+    long nextId() {
+        while (true) {
+            long previous = state.get();
+            long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            long next = now > previous ? now : previous + 1;
+            if (state.compareAndSet(previous, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    private static String encode(long id) {
+        String digits = Long.toString(id, 36).toUpperCase();
+        return "0".repeat(WIDTH - digits.length()) + digits;
+    }
+
+    // Fallback when zenbuy.node-id is not set; only safe with a single node
+    private static long hostNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName().hashCode() & MAX_NODE_ID;
+        } catch (UnknownHostException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.zenbuy.service;
+
+import com.zenbuy.model.Coupon;
+import com.zenbuy.repository.CouponRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(properties = {
+        "spring.autoconfigure.exclude=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "zenbuy.coupons.pool.min-uses=100",
+        "zenbuy.coupons.pool.stripes=8"
+})
+@ActiveProfiles("dev")
+@Import({CouponRedemptionService.class, CouponEngine.class, CacheInvalidationService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CouponRedemptionStressTests {
+
+    private static final int THREADS = 8;
+    private static final int ATTEMPTS_PER_THREAD = 30;
+
+    @Autowired
+    private CouponRedemptionService redemptionService;
+
+    @Autowired
+    private CouponEngine couponEngine;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void rowClaimsNeverExceedMaxUses() throws Exception {
+        Coupon coupon = saveCoupon("ROW40", 40);
+
+        assertThat(redeemConcurrently("row40")).isEqualTo(40);
+        assertThat(usedCount(coupon)).isEqualTo(40);
+    }
+
+    @Test
+    void pooledClaimsNeverExceedMaxUses() throws Exception {
+        Coupon coupon = saveCoupon("POOL150", 150);
+
+        assertThat(redeemConcurrently("POOL150")).isEqualTo(150);
+        assertThat(jdbcTemplate.queryForObject("SELECT MIN(remaining) FROM coupon_token_pool WHERE coupon_id = ?",
+                Integer.class, coupon.getId())).isZero();
+
+        redemptionService.rollUpPools();
+        assertThat(usedCount(coupon)).isEqualTo(150);
+    }
+
+    @Test
+    void rolledBackCheckoutGivesTheUseBack() {
+        Coupon coupon = saveCoupon("POOL100", 100);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(redemptionService.redeem("POOL100", 500).discount()).isEqualTo(50);
+            status.setRollbackOnly();
+        });
+        redemptionService.rollUpPools();
+        assertThat(usedCount(coupon)).isZero();
+
+        // Raising maxUses folds the pool back into the coupon and the next redemption allocates a new one
+        for (int i = 0; i < 100; i++) {
+            transactionTemplate.executeWithoutResult(status -> redemptionService.redeem("POOL100", 500));
+        }
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> redemptionService.redeem("POOL100", 500)))
+                .hasMessage("This coupon has reached its usage limit");
+        coupon = couponRepository.findById(coupon.getId()).orElseThrow();
+        coupon.setMaxUses(101);
+        couponRepository.save(coupon);
+        redemptionService.resetPool(coupon.getId());
+        couponEngine.invalidate(coupon.getId());
+        assertThat(usedCount(coupon)).isEqualTo(100);
+        transactionTemplate.executeWithoutResult(status -> redemptionService.redeem("POOL100", 500));
+        redemptionService.rollUpPools();
+        assertThat(usedCount(coupon)).isEqualTo(101);
+    }
+
+    @Test
+    void adminEditsDoNotOverwriteConcurrentRedemptions() throws Exception {
+        Coupon coupon = saveCoupon("EDIT60", 60);
+        // Like AdminController.updateCoupon: a copy read before the redemptions is edited and saved, outside
+        // any transaction, while checkouts keep redeeming
+        Coupon stale = couponRepository.findById(coupon.getId()).orElseThrow();
+        ExecutorService admin = Executors.newSingleThreadExecutor();
+        Future<?> edits;
+        int redeemed;
+        try {
+            edits = admin.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    stale.setDescription("Edit " + i);
+                    couponRepository.save(stale);
+                }
+                return null;
+            });
+            redeemed = redeemConcurrently("EDIT60");
+            edits.get();
+        } finally {
+            admin.shutdown();
+        }
+        stale.setDescription("Final edit");
+        couponRepository.save(stale);
+
+        assertThat(redeemed).isEqualTo(60);
+        assertThat(usedCount(coupon)).isEqualTo(60);
+    }
+
+    private Coupon saveCoupon(String code, int maxUses) {
+        Coupon coupon = new Coupon();
+        coupon.setCode(code);
+        coupon.setDiscountType("PERCENTAGE");
+        coupon.setDiscountValue(10.0);
+        coupon.setValidFrom(LocalDateTime.now().minusDays(1));
+        coupon.setValidUntil(LocalDateTime.now().plusDays(1));
+        coupon.setMaxUses(maxUses);
+        coupon = couponRepository.save(coupon);
+        couponEngine.invalidate(coupon.getId());
+        return coupon;
+    }
+
+    // Every thread keeps redeeming, each in its own transaction like a checkout, well past maxUses
+    private int redeemConcurrently(String code) throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger redeemed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                        try {
+                            transactionTemplate.executeWithoutResult(status -> redemptionService.redeem(code, 1000));
+                            redeemed.incrementAndGet();
+                        } catch (ConcurrencyFailureException e) {
+                            // A lock conflict; checkout would retry it
+                        } catch (RuntimeException e) {
+                            assertThat(e).hasMessage("This coupon has reached its usage limit");
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return redeemed.get();
+    }
+
+    private int usedCount(Coupon coupon) {
+        return jdbcTemplate.queryForObject("SELECT used_count FROM coupons WHERE id = ?", Integer.class, coupon.getId());
+    }
+}
@@ -0,0 +1,139 @@
+package com.zenbuy.service;
+
+import com.zenbuy.model.Order;
+import com.zenbuy.model.Product;
+import com.zenbuy.model.User;
+import com.zenbuy.repository.ProductRepository;
+import com.zenbuy.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.autoconfigure.exclude=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "zenbuy.checkout.batch-mode=true"
+})
+@ActiveProfiles("dev")
+@Import({OrderService.class, InventoryReservationEngine.class, SnowflakeOrderNumberGenerator.class,
+        CouponRedemptionService.class, CouponEngine.class,
+        OrderHistoryCache.class, CacheInvalidationService.class, OrderServiceStatementCountTests.StatementCounterConfig.class})
+class OrderServiceStatementCountTests {
+
+    private static final AtomicInteger EXECUTED = new AtomicInteger();
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void multiItemOrderCostsAConstantNumberOfStatements() {
+        User user = new User();
+        user.setEmail("batch@zenbuy.com");
+        user.setName("Batch Buyer");
+        user = userRepository.save(user);
+
+        OrderService.OrderRequest request = new OrderService.OrderRequest();
+        List<OrderService.OrderItemRequest> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setPrice(100);
+            product.setStockQuantity(10);
+            product = productRepository.save(product);
+
+            OrderService.OrderItemRequest item = new OrderService.OrderItemRequest();
+            item.setProductId(product.getId());
+            item.setName(product.getName());
+            item.setPrice(product.getPrice());
+            item.setQuantity(2);
+            items.add(item);
+        }
+        request.setItems(items);
+        request.setSubtotal(4000);
+        request.setTotal(4000);
+        OrderService.ShippingAddress address = new OrderService.ShippingAddress();
+        address.setCity("Pune");
+        request.setShippingAddress(address);
+
+        entityManager.flush();
+        entityManager.clear();
+        EXECUTED.set(0);
+
+        Order order = orderService.createOrder(user.getId(), request);
+        entityManager.flush();
+
+        // user SELECT, product IN SELECT, stock batch, sequence calls, order insert, item insert batch,
+        // cache invalidation row
+        assertThat(EXECUTED.get()).isLessThanOrEqualTo(9);
+        assertThat(order.getItems()).hasSize(20);
+
+        entityManager.clear();
+        assertThat(productRepository.findById(items.get(0).getProductId()).orElseThrow().getStockQuantity()).isEqualTo(8);
+    }
+
+    // Counts every statement execution (each one is a database round trip) on connections handed out by the pool
+    @TestConfiguration
+    static class StatementCounterConfig {
+
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return proxy(DataSource.class, dataSource);
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static <T> T proxy(Class<T> type, T target) {
+            Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+                if (target instanceof Statement && method.getName().startsWith("execute")) {
+                    EXECUTED.incrementAndGet();
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection connection && method.getReturnType() == Connection.class) {
+                    return proxy(Connection.class, connection);
+                }
+                if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    return proxy(method.getReturnType().asSubclass(Statement.class), statement);
+                }
+                return result;
+            });
+            return type.cast(proxy);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.zenbuy.service;
+
+import com.zenbuy.dto.ProductSummary;
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Same in-memory catalog setup as ProductSearchIndexTests, with price buckets below 0, [0,500), [500,1000), 1000+
+class ProductFacetIndexTests {
+
+    private final ConcurrentSkipListMap<Long, Product> catalog = new ConcurrentSkipListMap<>();
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private ProductFacetIndex index;
+    // Runs once, inside the next load, after the chunk has been read
+    private volatile Runnable pauseLoad;
+
+    @BeforeEach
+    void setUp() {
+        when(productRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Product> found = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                Product product = catalog.get(id);
+                if (product != null) {
+                    found.add(copy(product));
+                }
+            }
+            return found;
+        });
+        when(productRepository.findSummariesAfter(any(), any(), any(), anyLong(), any())).thenAnswer(invocation -> load(
+                invocation.getArgument(3), invocation.getArgument(4)));
+        index = new ProductFacetIndex(productRepository, new double[]{1000, 0, 500});
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+    }
+
+    @Test
+    void countsOnlyProductsThatPassTheFilters() {
+        add(1, "shoes", 100, 5);
+        add(2, "shoes", 600, 0);
+        add(3, "shoes", 1200, 2);
+        add(4, "hats", 50, 1);
+        add(5, "hats", 700, 0);
+        add(6, null, 300, 9);
+        refreshAll();
+
+        ProductFacetIndex.Facets all = index.facets(null, null, null, false);
+        assertThat(all.total()).isEqualTo(5);
+        assertThat(all.inStock()).isEqualTo(3);
+        assertThat(all.categories()).containsExactly(
+                new ProductFacetIndex.CategoryCount("hats", 2, 1),
+                new ProductFacetIndex.CategoryCount("shoes", 3, 2));
+        assertThat(all.priceBuckets()).containsExactly(
+                new ProductFacetIndex.PriceBucket(0.0, 500.0, 2, 2),
+                new ProductFacetIndex.PriceBucket(500.0, 1000.0, 2, 0),
+                new ProductFacetIndex.PriceBucket(1000.0, null, 1, 1));
+
+        ProductFacetIndex.Facets filtered = index.facets(null, 60.0, 1000.0, true);
+        assertThat(filtered.total()).isEqualTo(1);
+        assertThat(filtered.inStock()).isEqualTo(1);
+        assertThat(filtered.categories()).containsExactly(new ProductFacetIndex.CategoryCount("shoes", 1, 1));
+        assertThat(filtered.priceBuckets()).extracting(ProductFacetIndex.PriceBucket::count).containsExactly(1, 0, 0);
+    }
+
+    @Test
+    void categoryCountsIgnoreTheCategoryFilter() {
+        add(1, "shoes", 100, 5);
+        add(2, "shoes", 600, 0);
+        add(3, "hats", 50, 1);
+        add(4, "scarves", 2000, 3);
+        refreshAll();
+
+        ProductFacetIndex.Facets shoes = index.facets("shoes", null, 1000.0, false);
+        assertThat(shoes.total()).isEqualTo(2);
+        assertThat(shoes.inStock()).isEqualTo(1);
+        // Other categories stay visible so the sidebar can switch to them; the price filter still applies
+        assertThat(shoes.categories()).containsExactly(
+                new ProductFacetIndex.CategoryCount("hats", 1, 1),
+                new ProductFacetIndex.CategoryCount("shoes", 2, 1));
+        assertThat(shoes.priceBuckets()).extracting(ProductFacetIndex.PriceBucket::count).containsExactly(1, 1, 0);
+
+        ProductFacetIndex.Facets unknown = index.facets("gloves", null, null, false);
+        assertThat(unknown.total()).isZero();
+        assertThat(unknown.categories()).hasSize(3);
+        assertThatThrownBy(() -> index.facets(null, 10.0, 5.0, false)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void edgesBelongToTheBucketAboveThem() {
+        add(1, "misc", -1, 1);
+        add(2, "misc", 0, 1);
+        add(3, "misc", 499.99, 1);
+        add(4, "misc", 500, 1);
+        add(5, "misc", 1000, 1);
+        refreshAll();
+
+        assertThat(index.facets(null, null, null, false).priceBuckets()).containsExactly(
+                new ProductFacetIndex.PriceBucket(null, 0.0, 1, 1),
+                new ProductFacetIndex.PriceBucket(0.0, 500.0, 2, 2),
+                new ProductFacetIndex.PriceBucket(500.0, 1000.0, 1, 1),
+                new ProductFacetIndex.PriceBucket(1000.0, null, 1, 1));
+        // Price filters include both ends
+        assertThat(index.facets(null, 500.0, 1000.0, false).total()).isEqualTo(2);
+        // The bucket below the first edge is left out when it is empty
+        assertThat(index.facets(null, 0.0, null, false).priceBuckets()).hasSize(3);
+    }
+
+    @Test
+    void deletedProductsDropOutAfterRefresh() {
+        add(1, "shoes", 100, 5);
+        add(2, "hats", 200, 1);
+        refreshAll();
+
+        catalog.remove(2L);
+        index.onCatalogChanged(CatalogChangedEvent.productsChanged(2L));
+        ProductFacetIndex.Facets facets = index.facets(null, null, null, false);
+        assertThat(facets.total()).isEqualTo(1);
+        assertThat(facets.categories()).extracting(ProductFacetIndex.CategoryCount::category).containsExactly("shoes");
+
+        // Coming back takes a new row; the tombstone stays uncounted
+        add(2, "hats", 200, 0);
+        index.onCatalogChanged(CatalogChangedEvent.productsChanged(2L));
+        assertThat(index.facets(null, null, null, false).total()).isEqualTo(2);
+        assertThat(index.facets("hats", null, null, false).inStock()).isZero();
+
+        // Stock-only changes wait for the next tick
+        catalog.get(2L).setStockQuantity(4);
+        index.onCatalogChanged(CatalogChangedEvent.stockChanged(Set.of(2L)));
+        assertThat(index.facets("hats", null, null, false).inStock()).isZero();
+        index.refreshDirty();
+        assertThat(index.facets("hats", null, null, false).inStock()).isEqualTo(1);
+    }
+
+    @Test
+    void editDuringRebuildSurvivesTheSwap() throws Exception {
+        add(1, "shoes", 100, 5);
+        add(2, "hats", 200, 1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        pauseLoad = () -> {
+            loaded.countDown();
+            await(resume);
+        };
+
+        index.requestRebuild();
+        assertThat(loaded.await(5, TimeUnit.SECONDS)).isTrue();
+        // The rebuild has read product 1 as shoes; the edit moves it before the new columns are published
+        add(1, "boots", 900, 0);
+        index.onCatalogChanged(CatalogChangedEvent.productsChanged(1L));
+        resume.countDown();
+
+        // Once to apply the edit, once more when the rebuild finishes
+        verify(productRepository, timeout(5000).times(2)).findAllById(any());
+        assertThat(ProductSearchIndexTests.eventually(
+                () -> index.facets("shoes", null, null, false).total() == 0)).isTrue();
+        ProductFacetIndex.Facets facets = index.facets(null, null, null, false);
+        assertThat(facets.total()).isEqualTo(2);
+        assertThat(facets.categories()).containsExactly(
+                new ProductFacetIndex.CategoryCount("boots", 1, 0),
+                new ProductFacetIndex.CategoryCount("hats", 1, 1));
+    }
+
+    private void refreshAll() {
+        index.onCatalogChanged(CatalogChangedEvent.remote(catalog.keySet(), false));
+    }
+
+    private List<ProductSummary> load(long afterId, Limit limit) {
+        List<ProductSummary> chunk = new ArrayList<>();
+        for (Product product : catalog.tailMap(afterId, false).values()) {
+            if (chunk.size() == limit.max()) {
+                break;
+            }
+            chunk.add(ProductSummary.from(product));
+        }
+        Runnable pause = pauseLoad;
+        if (pause != null) {
+            pauseLoad = null;
+            pause.run();
+        }
+        return chunk;
+    }
+
+    private void add(long id, String category, double price, int stock) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Product " + id);
+        product.setCategory(category);
+        product.setPrice(price);
+        product.setStockQuantity(stock);
+        product.setVersion(0L);
+        catalog.put(id, product);
+    }
+
+    private static Product copy(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setCategory(product.getCategory());
+        copy.setPrice(product.getPrice());
+        copy.setStockQuantity(product.getStockQuantity());
+        copy.setVersion(product.getVersion());
+        return copy;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
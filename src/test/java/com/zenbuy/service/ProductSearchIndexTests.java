@@ -0,0 +1,216 @@
+package com.zenbuy.service;
+
+import com.zenbuy.dto.ProductSummary;
+import com.zenbuy.model.Product;
+import com.zenbuy.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// The repository is backed by an in-memory catalog so rebuilds can be paused halfway through the load
+class ProductSearchIndexTests {
+
+    private final ConcurrentSkipListMap<Long, Product> catalog = new ConcurrentSkipListMap<>();
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private ProductSearchIndex index;
+    // Runs once, inside the next load, after the chunk has been read
+    private volatile Runnable pauseLoad;
+
+    @BeforeEach
+    void setUp() {
+        when(productRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Product> found = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                Product product = catalog.get(id);
+                if (product != null) {
+                    found.add(copy(product));
+                }
+            }
+            return found;
+        });
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> load(
+                invocation.getArgument(0), invocation.getArgument(1)));
+        index = new ProductSearchIndex(productRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+    }
+
+    @Test
+    void prefixMatchesEveryTermAndCountsAllHits() {
+        // 99 distinct terms under "w0", more than any fixed expansion limit would keep
+        for (long id = 1; id <= 100; id++) {
+            add(id, String.format("Widget w%03d", id), "tools", null);
+        }
+        add(101, "Lamp", "home", null);
+        index.onCatalogChanged(CatalogChangedEvent.remote(catalog.keySet(), false));
+
+        ProductSearchIndex.SearchResults results = index.search("w0", 10);
+        assertThat(results.total()).isEqualTo(99);
+        assertThat(results.items()).hasSize(10);
+        assertThat(index.search("W05", 20).items()).extracting(ProductSummary::id)
+                .containsExactlyInAnyOrder(50L, 51L, 52L, 53L, 54L, 55L, 56L, 57L, 58L, 59L);
+        assertThat(index.search("wid", 100).total()).isEqualTo(100);
+        assertThat(index.search("lamps", 10).total()).isZero();
+    }
+
+    @Test
+    void everyTokenMustMatch() {
+        add(1, "Red Shoe", "footwear", null);
+        add(2, "Red Hat", "hats", null);
+        add(3, "Blue Shoe", "footwear", "Not red at all");
+        add(4, "Green Scarf", "scarves", null);
+        index.onCatalogChanged(CatalogChangedEvent.remote(catalog.keySet(), false));
+
+        assertThat(ids(index.search("red shoe", 10))).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(ids(index.search("foot gre", 10))).isEmpty();
+        assertThat(ids(index.search("the red hat", 10))).containsExactly(2L);
+        assertThat(index.search("red purple", 10).total()).isZero();
+        assertThat(index.search("and the", 10).total()).isZero();
+    }
+
+    @Test
+    void ranksExactNameMatchesFirst() {
+        add(1, "Lamp", "home", null);
+        add(2, "Desk", "office", "Fits a lamp");
+        add(3, "Lampshade", "home", null);
+        add(4, "Chair", "office", null);
+        index.onCatalogChanged(CatalogChangedEvent.remote(catalog.keySet(), false));
+
+        // Name beats description, and an exact term beats a prefix of a rarer one
+        assertThat(ids(index.search("lamp", 10))).containsExactly(1L, 3L, 2L);
+        assertThat(ids(index.search("lamp", 2))).containsExactly(1L, 3L);
+        // Equal scores rank the lower id first
+        assertThat(ids(index.search("office", 10))).containsExactly(2L, 4L);
+    }
+
+    @Test
+    void refreshAppliesEditsAndDeletes() {
+        add(1, "Oak Table", "furniture", null);
+        add(2, "Oak Chair", "furniture", null);
+        index.onCatalogChanged(CatalogChangedEvent.remote(catalog.keySet(), false));
+
+        add(1, "Pine Table", "furniture", null);
+        catalog.remove(2L);
+        index.onCatalogChanged(CatalogChangedEvent.productsChanged(1L));
+        index.onCatalogChanged(CatalogChangedEvent.productsChanged(2L));
+
+        assertThat(index.search("oak", 10).total()).isZero();
+        assertThat(ids(index.search("pine tab", 10))).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(1);
+
+        // Stock-only changes wait for the next tick
+        catalog.get(1L).setStockQuantity(7);
+        index.onCatalogChanged(CatalogChangedEvent.stockChanged(Set.of(1L)));
+        assertThat(index.search("pine", 10).items().get(0).stockQuantity()).isZero();
+        index.refreshDirty();
+        assertThat(index.search("pine", 10).items().get(0).stockQuantity()).isEqualTo(7);
+    }
+
+    @Test
+    void editDuringRebuildSurvivesTheSwap() throws Exception {
+        add(1, "Old Lamp", "home", null);
+        add(2, "Desk", "office", null);
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        pauseLoad = () -> {
+            loaded.countDown();
+            await(resume);
+        };
+
+        index.requestRebuild();
+        assertThat(loaded.await(5, TimeUnit.SECONDS)).isTrue();
+        // The rebuild has read "Old Lamp"; the edit commits and is applied before the new index is published
+        add(1, "New Lamp", "home", null);
+        index.onCatalogChanged(CatalogChangedEvent.productsChanged(1L));
+        resume.countDown();
+
+        // Once to apply the edit, once more when the rebuild finishes
+        verify(productRepository, timeout(5000).times(2)).findAllById(any());
+        assertThat(eventually(() -> index.search("old", 10).total() == 0)).isTrue();
+        assertThat(ids(index.search("new lamp", 10))).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    private List<Product> load(long afterId, Limit limit) {
+        List<Product> chunk = new ArrayList<>();
+        for (Product product : catalog.tailMap(afterId, false).values()) {
+            if (chunk.size() == limit.max()) {
+                break;
+            }
+            chunk.add(copy(product));
+        }
+        Runnable pause = pauseLoad;
+        if (pause != null) {
+            pauseLoad = null;
+            pause.run();
+        }
+        return chunk;
+    }
+
+    private void add(long id, String name, String category, String description) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setCategory(category);
+        product.setDescription(description);
+        product.setPrice(10);
+        product.setVersion(0L);
+        catalog.put(id, product);
+    }
+
+    private static Product copy(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setCategory(product.getCategory());
+        copy.setDescription(product.getDescription());
+        copy.setPrice(product.getPrice());
+        copy.setStockQuantity(product.getStockQuantity());
+        copy.setVersion(product.getVersion());
+        return copy;
+    }
+
+    private static List<Long> ids(ProductSearchIndex.SearchResults results) {
+        return results.items().stream().map(ProductSummary::id).toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}